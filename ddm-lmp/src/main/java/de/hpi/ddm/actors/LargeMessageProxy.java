@@ -1,19 +1,55 @@
 package de.hpi.ddm.actors;
 
 import akka.actor.AbstractLoggingActor;
+import akka.actor.ActorPath;
 import akka.actor.ActorRef;
 import akka.actor.ActorSelection;
+import akka.actor.Address;
+import akka.actor.Cancellable;
 import akka.actor.Props;
+import akka.actor.Terminated;
 import akka.serialization.Serialization;
 import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
 import akka.serialization.Serializers;
+import akka.util.ByteString;
+import com.twitter.chill.akka.AkkaSerializer;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.Input;
+import de.hpi.ddm.configuration.ConfigurationSingleton;
+import de.hpi.ddm.structures.BatchCompressor;
+import de.hpi.ddm.structures.ChunkedInputStream;
+import de.hpi.ddm.structures.ChunkedOutput;
+import de.hpi.ddm.structures.Crc32c;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
 
 public class LargeMessageProxy extends AbstractLoggingActor {
 
@@ -22,7 +58,23 @@ public class LargeMessageProxy extends AbstractLoggingActor {
     ////////////////////////
 
     public static final String DEFAULT_NAME = "largeMessageProxy";
-    public static final int DEFAULT_BATCH_SIZE = 256000;
+    public static final String DISPATCHER_NAME = "large-message-proxy-dispatcher";
+    public static final String SERIALIZATION_DISPATCHER_NAME = "large-message-serialization-dispatcher";
+    public static final String VERIFICATION_DISPATCHER_NAME = "large-message-verification-dispatcher";
+    public static final int DEFAULT_BATCH_SIZE = 256000;			// Batch size towards systems whose link has not been measured yet
+    public static final int MIN_BATCH_SIZE = 64 * 1024;
+    public static final int FRAME_OVERHEAD = 4 * 1024;			// Room in an Artery frame for the envelope around a batch
+    public static final int DEFAULT_WINDOW = 16;				// Batches that a sender may have in flight per transfer
+    public static final int CREDIT_BATCH = DEFAULT_WINDOW / 2;	// Batches that a receiver consumes before it grants new credits
+    public static final double THROUGHPUT_SMOOTHING = 0.25;
+    public static final Path SHARED_MEMORY_DIRECTORY = sharedMemoryDirectory();
+    public static final String SHARED_FILE_PREFIX = "large-message-";
+    public static final int RELAY_FANOUT = 2;					// Systems to which every node of a broadcast's relay tree forwards the batches
+    public static final long STALL_TIMEOUT_MILLIS = 2000;		// Time without an answer from the receiver after which a sender probes its transfer
+    public static final int MAX_PROBES = 5;						// Unanswered probes after which a sender gives up a transfer
+    public static final long IDLE_TIMEOUT_MILLIS = (MAX_PROBES + 2) * STALL_TIMEOUT_MILLIS;	// Time without a word from the sender after which a receiver drops its transfer
+    public static final int MAX_RESTARTS = 2;					// Times that a transfer starts over after its receiver has lost it
+    public static final int RECENT_TRANSFERS = 1024;			// Delivered transfers that a receiver remembers, so that it can answer late probes
 
 
     public static Props props() {
@@ -38,18 +90,92 @@ public class LargeMessageProxy extends AbstractLoggingActor {
     @AllArgsConstructor
     public static class PostLargeMessage implements Serializable {
         private static final long serialVersionUID = -3132821777758085789L;
+        private long transferID;
+        private int numBatches;	// Lets the receiver notice that the last batches got lost
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PreLargeMessage implements Serializable {
+        private static final long serialVersionUID = 6970977148928832981L;
+        private long transferID;
         private ActorRef sender;
         private ActorRef receiver;
         private int serializerID;
         private String manifest;
+        private List<ActorRef> relayReceivers;	// Receivers to which the receiving proxy forwards a broadcast's batches
     }
 
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
-    public static class PreLargeMessage implements Serializable {
-        private static final long serialVersionUID = 6970977148928832981L;
-        private int expectedNumberOfBytes;
+    public static class AbortLargeMessage implements Serializable {
+        private static final long serialVersionUID = 1733536880913547702L;
+        private long transferID;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RejectLargeMessage implements Serializable {
+        private static final long serialVersionUID = -4622009325263385541L;
+        private long transferID;
+    }
+
+    // Passes a message that the sender has serialized into a file, which the receiver on the same host maps and deletes
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SharedLargeMessage implements Serializable {
+        private static final long serialVersionUID = -2266163532411318541L;
+        private long transferID;
+        private ActorRef sender;
+        private ActorRef receiver;
+        private int serializerID;
+        private String manifest;
+        private String path;
+        private long length;
+    }
+
+    // Confirms that a transfer has been delivered, so that its sender can drop the batches that it keeps for resending
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class AcceptLargeMessage implements Serializable {
+        private static final long serialVersionUID = 5484000327929305046L;
+        private long transferID;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class GrantCreditsMessage implements Serializable {
+        private static final long serialVersionUID = -1409317528810474513L;
+        private long transferID;
+        private int consumedBatches;	// Cumulative, so that a lost grant is made up for by the next one
+    }
+
+    // Asks the sender for the batches from fromSequenceNumber up to but excluding toSequenceNumber once more
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ResendBatchesMessage implements Serializable {
+        private static final long serialVersionUID = 7383520427012394815L;
+        private long transferID;
+        private int fromSequenceNumber;
+        private int toSequenceNumber;
+    }
+
+    // Asks the receiver of a transfer that has not answered for a while which batches it is missing
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ProbeLargeMessage implements Serializable {
+        private static final long serialVersionUID = -803528185290413398L;
+        private long transferID;
+        private int sentBatches;
+        private boolean posted;
     }
 
     @Data
@@ -61,12 +187,31 @@ public class LargeMessageProxy extends AbstractLoggingActor {
         private ActorRef receiver;
     }
 
+    /**
+     * Sends one message to many receivers and serializes it only once. With relaying, every remote system receives the
+     * batches only once, and its proxy forwards them to the other receivers of its share of the broadcast, so that the
+     * sender's bytes on the wire grow with the fan-out of the relay tree rather than with the number of receivers.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BroadcastLargeMessage<T> implements Serializable {
+        private static final long serialVersionUID = -6152707349416271186L;
+        private T message;
+        private List<ActorRef> receivers;
+        private boolean relay;
+    }
+
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
     public static class BytesBatchMessage implements Serializable {
         private static final long serialVersionUID = 4057807743872319842L;
-        private byte[] bytes;
+        private long transferID;
+        private int sequenceNumber;
+        private ByteString bytes;	// A read-only view that is framed by the BytesBatchSerializer without further copies
+        private int rawLength;		// The length of the bytes before compression, or 0 if they are not compressed
+        private int checksum;		// The CRC-32C of the bytes as they are sent
     }
 
     @Data
@@ -89,17 +234,265 @@ public class LargeMessageProxy extends AbstractLoggingActor {
         private ActorRef receiver;
     }
 
+    // Reported to the proxy by the serialization and deserialization threads of its transfers
+
+    @Data
+    @AllArgsConstructor
+    private static class SerializedBatchMessage {
+        private long transferID;
+        private ByteString bytes;
+        private int rawLength;
+        private int checksum;
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class SerializationCompletedMessage {
+        private long transferID;
+        private Throwable failure;
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class BatchVerifiedMessage {
+        private TransferKey transferKey;
+        private BytesBatchMessage batch;
+        private boolean intact;
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class BatchConsumedMessage {
+        private TransferKey transferKey;
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class SharedFileWrittenMessage {
+        private long transferID;
+        private Path file;
+        private long length;
+        private Throwable failure;
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class SharedFileReadMessage {
+        private ActorRef senderProxy;
+        private SharedLargeMessage sharedLargeMessage;
+        private Object message;
+        private Throwable failure;
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class DeserializationCompletedMessage {
+        private TransferKey transferKey;
+        private Object message;
+        private Throwable failure;
+    }
+
+    private static class CheckStalledTransfersMessage {
+    }
+
     /////////////////
     // Actor State //
     /////////////////
 
-    private ByteBuffer receiverProxyAssembler;
+    private static class OutgoingTransfer {
+        private final ActorPath receiverProxyPath;
+        private final ActorSelection receiverProxy;
+        // All messages of a transfer take the same route, because Artery orders messages only within one stream
+        private final ActorRef receiverProxyRef;
+        private final int maxBatchSize;
+        private final Link link;
+        private final Deque<SerializedBatchMessage> serializedBatches = new ArrayDeque<>();
+        // Bounds the batches that are serialized but not yet sent, so serialization cannot run ahead of the credits
+        private final Semaphore serializationPermits = new Semaphore(DEFAULT_WINDOW);
+        private boolean serialized = false;
+        // Sent batches are kept until the receiver has consumed them, so that it can ask for any of them again
+        private final Deque<SerializedBatchMessage> unacknowledgedBatches = new ArrayDeque<>();
+        private int sentBatches = 0;
+        private int acknowledgedBatches = 0;
+        private boolean acknowledged = false;
+        private boolean posted = false;
+        // Read by the serialization thread whenever it starts a new batch
+        private volatile int batchSize;
+        private final long startNanos = System.nanoTime();
+        private long lastCreditNanos;
+        private long lastAnswerNanos = this.startNanos;
+        private int probes = 0;
+        // The message, if the transfer can start over when its receiver restarts; broadcasts and relays fall back to their group instead
+        private LargeMessage<?> message;
+        private ActorRef sender;
+        private int restarts = 0;
+        // The receivers that a broadcast or relay transfer serves, which get the message point-to-point if the transfer fails;
+        // relays know the message only once they have deserialized it themselves, until then their incoming transfer does
+        private List<ActorRef> group;
+        private Object payload;
+        private TransferKey relayOf;
+
+        private OutgoingTransfer(ActorPath receiverProxyPath, ActorSelection receiverProxy, ActorRef receiverProxyRef, int maxBatchSize, Link link) {
+            this.receiverProxyPath = receiverProxyPath;
+            this.receiverProxy = receiverProxy;
+            this.receiverProxyRef = receiverProxyRef;
+            this.maxBatchSize = maxBatchSize;
+            this.link = link;
+            this.batchSize = link.batchSize(maxBatchSize);
+        }
+
+        private void tell(Object message, ActorRef sender) {
+            if (this.receiverProxyRef != null)
+                this.receiverProxyRef.tell(message, sender);
+            else
+                this.receiverProxy.tell(message, sender);
+        }
+    }
+
+    /**
+     * Measurements of the link to one remote system that all transfers to it share. The batch size is chosen so that
+     * the batches of one credit grant cover the link's bandwidth-delay product: while the window limits the throughput,
+     * the measured throughput grows with the batch size, which doubles the next estimate; once the link limits it, the
+     * estimate settles. The round trip is the minimum seen, so that queueing behind earlier batches does not inflate it.
+     */
+    static class Link {
+        private long minRoundTripNanos = Long.MAX_VALUE;
+        private double bytesPerNano = 0;
+
+        void sampleRoundTrip(long nanos) {
+            this.minRoundTripNanos = Math.min(this.minRoundTripNanos, nanos);
+        }
+
+        void sampleThroughput(long bytes, long nanos) {
+            double sample = bytes / (double) Math.max(1, nanos);
+            this.bytesPerNano = this.bytesPerNano == 0 ? sample : this.bytesPerNano + THROUGHPUT_SMOOTHING * (sample - this.bytesPerNano);
+        }
+
+        int batchSize(int maxBatchSize) {
+            if (this.minRoundTripNanos == Long.MAX_VALUE || this.bytesPerNano == 0)
+                return Math.min(DEFAULT_BATCH_SIZE, maxBatchSize);
+
+            double bandwidthDelayProduct = this.bytesPerNano * this.minRoundTripNanos;
+            return (int) Math.max(MIN_BATCH_SIZE, Math.min(maxBatchSize, bandwidthDelayProduct / CREDIT_BATCH));
+        }
+    }
+
+    private static class IncomingTransfer {
+        private final PreLargeMessage preLargeMessage;
+        // Fed with the batches as they arrive and read concurrently by the deserialization thread
+        private final ChunkedInputStream batches;
+        // Batches enter the stream in sequence; verified batches that overtake a missing or unverified one wait here
+        private final SortedMap<Integer, BytesBatchMessage> earlyBatches = new TreeMap<>();
+        private int nextBatch = 0;
+        private int nextArrival = 0;	// Batches arrive in order, so batches that a new one overtakes have been lost
+        private int numBatches = -1;	// Known once the end of the transfer has arrived
+        private int consumedBatches = 0;
+        private boolean ended = false;
+        private boolean deserialized = false;
+        private Object message;
+        // A live sender sends batches or probes at least once per stall timeout while the transfer is not delivered
+        private long lastHeardNanos = System.nanoTime();
+        // The outgoing transfers that forward the batches of a broadcast and the receivers that share the message in this system
+        private final List<Long> relays = new ArrayList<>();
+        private final List<ActorRef> localRelayReceivers = new ArrayList<>();
+        // Receivers of failed relays, which get the message point-to-point once it is deserialized
+        private final List<ActorRef> fallbackReceivers = new ArrayList<>();
+
+        private IncomingTransfer(PreLargeMessage preLargeMessage, ChunkedInputStream batches) {
+            this.preLargeMessage = preLargeMessage;
+            this.batches = batches;
+        }
+    }
+
+    // A message that waits in a shared file for its receiver; it is kept until the receiver accepts it, so that
+    // it can still be sent via TCP if the receiver cannot read the file or does not answer
+    private static class SharedTransfer {
+        private final ActorSelection receiverProxy;
+        private final LargeMessage<?> message;
+        private final ActorRef sender;
+        private final Serializer serializer;
+        private Path file;
+        private boolean acknowledged = false;
+        private long lastAnswerNanos;
+        private int probes = 0;
+
+        private SharedTransfer(ActorSelection receiverProxy, LargeMessage<?> message, ActorRef sender, Serializer serializer) {
+            this.receiverProxy = receiverProxy;
+            this.message = message;
+            this.sender = sender;
+            this.serializer = serializer;
+        }
+    }
+
+    // Forgets the eldest transfers beyond RECENT_TRANSFERS
+    private static class RecentTransfers extends LinkedHashMap<TransferKey, Boolean> {
+        private static final long serialVersionUID = -2906741385164817722L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TransferKey, Boolean> eldest) {
+            return this.size() > RECENT_TRANSFERS;
+        }
+    }
+
+    // Transfer IDs are unique per sending proxy only, so incoming transfers are identified by both
+    @Data
+    @AllArgsConstructor
+    private static class TransferKey {
+        private ActorRef senderProxy;
+        private long transferID;
+    }
+
+    private long nextTransferID = 0;
+    private final Map<Long, OutgoingTransfer> outgoingTransfers = new HashMap<>();
+    private final Map<TransferKey, IncomingTransfer> incomingTransfers = new HashMap<>();
+    // Recently delivered transfers, so that probes and resent batches that arrive late are not taken for unknown transfers
+    private final Set<TransferKey> deliveredTransfers = Collections.newSetFromMap(new RecentTransfers());
+    private final Map<Long, SharedTransfer> sharedTransfers = new HashMap<>();
+    // Shared files that this proxy is reading, so that it can tell the probes of their senders that it is still busy
+    private final Set<TransferKey> sharedReads = new HashSet<>();
+    // The transfers that share the batches of one serialization, i.e. the transfers of a broadcast
+    private final Map<Long, List<Long>> broadcasts = new HashMap<>();
+    private final Map<Address, Link> links = new HashMap<>();
+    // Whether a remote system runs on this host and can read this system's shared files
+    private final Map<Address, Boolean> sameHost = new HashMap<>();
+    // Proxies that have granted credits before; messages to their refs take Artery's large message stream, whereas
+    // messages to selections are delivered via the remote system's root guardian and take the ordinary stream
+    private final Map<ActorPath, ActorRef> receiverProxies = new HashMap<>();
+    // Batches must fit into the frames of their stream, or Artery drops them
+    private final int maxSelectionBatchSize = maxBatchSize("akka.remote.artery.advanced.maximum-frame-size");
+    private final int maxDirectBatchSize = maxBatchSize("akka.remote.artery.advanced.maximum-large-frame-size");
     private final Serialization serialization = SerializationExtension.get(this.context().system());
+    private final Executor deserializationExecutor = this.context().system().dispatchers().lookup(DISPATCHER_NAME);
+    private final Executor serializationExecutor = this.context().system().dispatchers().lookup(SERIALIZATION_DISPATCHER_NAME);
+    private final Executor verificationExecutor = this.context().system().dispatchers().lookup(VERIFICATION_DISPATCHER_NAME);
+    private final boolean compressBatches = ConfigurationSingleton.get().isCompressBatches();
+    private final boolean sharedMemory = ConfigurationSingleton.get().isSharedMemory();
+    private Cancellable stallCheck;
 
     /////////////////////
     // Actor Lifecycle //
     /////////////////////
 
+    @Override
+    public void preStart() {
+        // Checking twice per timeout lets stalled transfers wait hardly longer than the timeout
+        FiniteDuration interval = Duration.create(STALL_TIMEOUT_MILLIS / 2, TimeUnit.MILLISECONDS);
+        this.stallCheck = this.context().system().scheduler().schedule(interval, interval,
+                this.self(), new CheckStalledTransfersMessage(), this.context().dispatcher(), ActorRef.noSender());
+    }
+
+    @Override
+    public void postStop() {
+        this.stallCheck.cancel();
+        // Serialization threads that wait for permits must not block forever once nobody sends their batches anymore
+        for (OutgoingTransfer transfer : this.outgoingTransfers.values())
+            transfer.serializationPermits.release(Integer.MAX_VALUE / 2);
+        for (IncomingTransfer transfer : this.incomingTransfers.values())
+            transfer.batches.abort();
+        for (SharedTransfer transfer : this.sharedTransfers.values())
+            deleteSharedFile(transfer.file);
+    }
+
     ////////////////////
     // Actor Behavior //
     ////////////////////
@@ -108,60 +501,732 @@ public class LargeMessageProxy extends AbstractLoggingActor {
     public Receive createReceive() {
         return receiveBuilder()
                 .match(LargeMessage.class, this::handle)
+                .match(BroadcastLargeMessage.class, this::handle)
                 .match(LocalMessage.class, this::handle)
                 .match(BytesBatchMessage.class, this::handle)
                 .match(PreLargeMessage.class, this::handle)
                 .match(PostLargeMessage.class, this::handle)
+                .match(AbortLargeMessage.class, this::handle)
+                .match(RejectLargeMessage.class, this::handle)
+                .match(GrantCreditsMessage.class, this::handle)
+                .match(ResendBatchesMessage.class, this::handle)
+                .match(ProbeLargeMessage.class, this::handle)
+                .match(CheckStalledTransfersMessage.class, this::handle)
+                .match(BatchVerifiedMessage.class, this::handle)
+                .match(SerializedBatchMessage.class, this::handle)
+                .match(SerializationCompletedMessage.class, this::handle)
+                .match(BatchConsumedMessage.class, this::handle)
+                .match(DeserializationCompletedMessage.class, this::handle)
+                .match(SharedLargeMessage.class, this::handle)
+                .match(AcceptLargeMessage.class, this::handle)
+                .match(SharedFileWrittenMessage.class, this::handle)
+                .match(SharedFileReadMessage.class, this::handle)
+                .match(Terminated.class, this::handle)
                 .matchAny(object -> this.log().info("Received unknown message: \"{}\"", object.toString()))
                 .build();
     }
 
     private void handle(PreLargeMessage preLargeMessage) {
-        receiverProxyAssembler = ByteBuffer.allocate(preLargeMessage.getExpectedNumberOfBytes());
+        final ActorRef self = this.self();
+        final TransferKey transferKey = new TransferKey(this.sender(), preLargeMessage.getTransferID());
+        ChunkedInputStream batches = new ChunkedInputStream(() -> self.tell(new BatchConsumedMessage(transferKey), ActorRef.noSender()));
+        IncomingTransfer transfer = new IncomingTransfer(preLargeMessage, batches);
+        this.incomingTransfers.put(transferKey, transfer);
+        // A sender that dies before the end of its transfer would leave the deserialization thread waiting for batches forever
+        this.context().watch(this.sender());
+
+        // Relays forward the batches as they arrive; credits still follow the local deserialization only, so a slow
+        // downstream receiver makes the relay buffer batches rather than slowing down the whole broadcast
+        List<ActorRef> remoteRelayReceivers = new ArrayList<>();
+        for (ActorRef relayReceiver : preLargeMessage.getRelayReceivers())
+            (isRemote(relayReceiver) ? remoteRelayReceivers : transfer.localRelayReceivers).add(relayReceiver);
+        transfer.relays.addAll(this.startTransfers(remoteRelayReceivers, true, preLargeMessage.getSender(),
+                preLargeMessage.getSerializerID(), preLargeMessage.getManifest()));
+        for (long relayID : transfer.relays)
+            this.outgoingTransfers.get(relayID).relayOf = transferKey;
+
+        // The message is deserialized on a separate thread while its batches arrive, so that it is ready soon after the last one
+        CompletableFuture
+                .supplyAsync(() -> deserialize(batches, preLargeMessage.getSerializerID(), preLargeMessage.getManifest()), this.deserializationExecutor)
+                .whenComplete((message, failure) -> self.tell(new DeserializationCompletedMessage(transferKey, message, failure), ActorRef.noSender()));
+
+        // The sender holds the first window already; the empty grant lets it time the round trip
+        this.sender().tell(new GrantCreditsMessage(preLargeMessage.getTransferID(), 0), this.self());
     }
 
     private void handle(PostLargeMessage postLargeMessage) {
-        byte[] serializedLargeMessage = receiverProxyAssembler.array();
-        receiverProxyAssembler = null;
-        Object deserializedLargeMessage = deserialize(serializedLargeMessage, postLargeMessage);
+        TransferKey transferKey = new TransferKey(this.sender(), postLargeMessage.getTransferID());
+        IncomingTransfer transfer = this.incomingTransfers.get(transferKey);
+        if (transfer == null) {
+            if (!this.deliveredTransfers.contains(transferKey))
+                this.log().warning("Received the end of unknown transfer {} from {}", postLargeMessage.getTransferID(), this.sender());
+            return;
+        }
+
+        transfer.lastHeardNanos = System.nanoTime();
+        transfer.numBatches = postLargeMessage.getNumBatches();
+        if (transfer.nextArrival < transfer.numBatches) {
+            this.requestBatches(transferKey, transfer, transfer.nextArrival, transfer.numBatches);
+            transfer.nextArrival = transfer.numBatches;
+        }
+        this.end(transferKey, transfer);
+    }
+
+    private void end(TransferKey transferKey, IncomingTransfer transfer) {
+        if (transfer.ended || transfer.nextBatch != transfer.numBatches)
+            return;
+
+        transfer.ended = true;
+        transfer.batches.end();
+        for (long relayID : transfer.relays) {
+            OutgoingTransfer relay = this.outgoingTransfers.get(relayID);
+            if (relay != null) {
+                relay.serialized = true;
+                this.send(relayID, relay);
+            }
+        }
+        this.deliver(transferKey, transfer);
+    }
+
+    private void handle(DeserializationCompletedMessage message) {
+        IncomingTransfer transfer = this.incomingTransfers.get(message.getTransferKey());
+        if (transfer == null)
+            return;
+
+        if (message.getFailure() != null) {
+            this.log().error(message.getFailure(), "Could not deserialize the message of transfer {} from {}",
+                    message.getTransferKey().getTransferID(), message.getTransferKey().getSenderProxy());
+            this.incomingTransfers.remove(message.getTransferKey());
+            this.abortRelays(transfer);
+            message.getTransferKey().getSenderProxy().tell(new RejectLargeMessage(message.getTransferKey().getTransferID()), this.self());
+            return;
+        }
+
+        transfer.deserialized = true;
+        transfer.message = message.getMessage();
+        this.deliver(message.getTransferKey(), transfer);
+    }
+
+    private void deliver(TransferKey transferKey, IncomingTransfer transfer) {
+        if (!transfer.ended || !transfer.deserialized)
+            return;
+
+        this.incomingTransfers.remove(transferKey);
+        this.deliveredTransfers.add(transferKey);
+        transferKey.getSenderProxy().tell(new AcceptLargeMessage(transferKey.getTransferID()), this.self());
+
+        PreLargeMessage preLargeMessage = transfer.preLargeMessage;
+        preLargeMessage.getReceiver().tell(
+                new AssembledLargeMessage(transfer.message, preLargeMessage.getSender(), preLargeMessage.getReceiver()),
+                preLargeMessage.getSender());
+
+        // Receivers in the same system share the deserialized message just like local large messages do
+        for (ActorRef receiver : transfer.localRelayReceivers)
+            receiver.tell(new AssembledLargeMessage(transfer.message, preLargeMessage.getSender(), receiver), preLargeMessage.getSender());
+
+        // Relays that are still running fall back to the deserialized message if they fail later on
+        for (long relayID : transfer.relays) {
+            OutgoingTransfer relay = this.outgoingTransfers.get(relayID);
+            if (relay != null)
+                relay.payload = transfer.message;
+        }
+        for (ActorRef receiver : transfer.fallbackReceivers)
+            this.handleRemote(receiver, new LargeMessage<>(transfer.message, receiver), preLargeMessage.getSender(), 1);
+    }
+
+    private void handle(AbortLargeMessage message) {
+        IncomingTransfer transfer = this.incomingTransfers.remove(new TransferKey(this.sender(), message.getTransferID()));
+        if (transfer != null)
+            this.abort(transfer);
+    }
 
-        postLargeMessage.getReceiver().tell(
-                new AssembledLargeMessage(deserializedLargeMessage, postLargeMessage.getSender(), postLargeMessage.getReceiver()),
-                postLargeMessage.getSender());
+    private void abort(IncomingTransfer transfer) {
+        transfer.batches.abort();
+        this.abortRelays(transfer);
+    }
+
+    private void abortRelays(IncomingTransfer transfer) {
+        for (long relayID : transfer.relays) {
+            OutgoingTransfer relay = this.outgoingTransfers.remove(relayID);
+            if (relay != null)
+                relay.tell(new AbortLargeMessage(relayID), this.self());
+        }
+    }
+
+    private void handle(RejectLargeMessage message) {
+        SharedTransfer sharedTransfer = this.sharedTransfers.remove(message.getTransferID());
+        if (sharedTransfer != null) {
+            // The receiver runs on this host but cannot read our files, e.g. because it runs in another container; a
+            // receiver that has never acknowledged the transfer has just not got it and answers a probe
+            if (sharedTransfer.acknowledged) {
+                this.log().info("{} cannot read shared files; sending large messages to it via TCP", this.sender());
+                this.sameHost.put(sharedTransfer.receiverProxy.anchorPath().address(), false);
+            }
+            deleteSharedFile(sharedTransfer.file);
+            this.handleRemote(sharedTransfer.receiverProxy, sharedTransfer.message, sharedTransfer.sender);
+            return;
+        }
+
+        // Receivers reject transfers that they do not know, e.g. because they have been restarted, and transfers that they
+        // could not deserialize; either way, the transfer starts over, but only a few times
+        OutgoingTransfer transfer = this.outgoingTransfers.remove(message.getTransferID());
+        if (transfer != null) {
+            this.log().warning("Transfer {} has been rejected by {}", message.getTransferID(), this.sender());
+            this.restart(message.getTransferID(), transfer, null);
+        }
     }
 
     private void handle(LargeMessage<?> message) {
         ActorRef receiver = message.getReceiver();
         ActorSelection receiverProxy = this.context().actorSelection(receiver.path().child(DEFAULT_NAME));
-        if (receiverProxy.anchorPath().toString().contains("@")) {
-            handleRemote(receiverProxy, message);
+        if (isRemote(receiver)) {
+            if (this.sharedMemory && this.sameHost.computeIfAbsent(receiverProxy.anchorPath().address(), LargeMessageProxy::isSameHost))
+                handleShared(receiverProxy, message);
+            else
+                handleRemote(receiverProxy, message, this.sender());
         } else {
             receiverProxy.tell(new LocalMessage<>(message.getMessage(), this.sender(), message.getReceiver()),
                     this.self());
         }
     }
 
-    private void handleRemote(ActorSelection receiverProxy, LargeMessage<?> message) {
-        byte[] bytes = serialize(message.getMessage(), serialization);
-        int serializerID = serialization.findSerializerFor(message.getMessage()).identifier();
-        String manifest = Serializers.manifestFor(serialization.findSerializerFor(message.getMessage()), message.getMessage());
+    private void handle(BroadcastLargeMessage<?> message) {
+        List<ActorRef> remoteReceivers = new ArrayList<>();
+        for (ActorRef receiver : message.getReceivers()) {
+            if (isRemote(receiver))
+                remoteReceivers.add(receiver);
+            else
+                this.handle(new LargeMessage<>(message.getMessage(), receiver));
+        }
+        if (remoteReceivers.isEmpty())
+            return;
 
-        receiverProxy.tell(new PreLargeMessage(bytes.length), this.self());
+        Serializer serializer = serialization.findSerializerFor(message.getMessage());
+        String manifest = Serializers.manifestFor(serializer, message.getMessage());
 
-        byte[][] byteBatches = splitSerializedObject(bytes);
+        long broadcastID = this.nextTransferID++;
+        List<Long> transferIDs = this.startTransfers(remoteReceivers, message.isRelay(), this.sender(), serializer.identifier(), manifest);
+        for (long transferID : transferIDs)
+            this.outgoingTransfers.get(transferID).payload = message.getMessage();
+        this.broadcasts.put(broadcastID, transferIDs);
 
-        for (byte[] batch : byteBatches) {
-            receiverProxy.tell(new BytesBatchMessage(batch), this.self());
+        // All transfers share the same batches, so the batches cannot adapt to any one link; they fit into the frames of
+        // the ordinary stream, so that relays can forward them on any route. Serialization does not wait for credits,
+        // because the batches are kept until the slowest receiver has got them anyway.
+        final int batchSize = Math.min(DEFAULT_BATCH_SIZE, this.maxSelectionBatchSize);
+        this.serializeAsync(broadcastID, message.getMessage(), serializer, () -> batchSize, null);
+    }
+
+    /**
+     * Starts a transfer to every receiver or, with relaying, to the first receiver in each of up to RELAY_FANOUT groups
+     * of systems. The first receiver of a group relays the batches to all other receivers of the group.
+     * @return the IDs of the started transfers
+     */
+    private List<Long> startTransfers(List<ActorRef> receivers, boolean relay, ActorRef sender, int serializerID, String manifest) {
+        List<List<ActorRef>> groups = new ArrayList<>();
+        if (relay) {
+            Map<Address, List<ActorRef>> systems = new LinkedHashMap<>();
+            for (ActorRef receiver : receivers)
+                systems.computeIfAbsent(receiver.path().address(), address -> new ArrayList<>()).add(receiver);
+
+            List<List<ActorRef>> systemReceivers = new ArrayList<>(systems.values());
+            int numGroups = Math.min(RELAY_FANOUT, systemReceivers.size());
+            for (int i = 0; i < numGroups; i++) {
+                List<ActorRef> group = new ArrayList<>();
+                for (List<ActorRef> system : systemReceivers.subList(i * systemReceivers.size() / numGroups, (i + 1) * systemReceivers.size() / numGroups))
+                    group.addAll(system);
+                groups.add(group);
+            }
+        } else {
+            for (ActorRef receiver : receivers)
+                groups.add(Collections.singletonList(receiver));
+        }
+
+        List<Long> transferIDs = new ArrayList<>();
+        for (List<ActorRef> group : groups) {
+            ActorRef receiver = group.get(0);
+            long transferID = this.nextTransferID++;
+            OutgoingTransfer transfer = this.createTransfer(receiver);
+            transfer.sender = sender;
+            transfer.group = group;
+            this.outgoingTransfers.put(transferID, transfer);
+            transfer.tell(new PreLargeMessage(transferID, sender, receiver, serializerID, manifest,
+                    new ArrayList<>(group.subList(1, group.size()))), this.self());
+            transferIDs.add(transferID);
         }
+        return transferIDs;
+    }
+
+    private OutgoingTransfer createTransfer(ActorRef receiver) {
+        ActorPath receiverProxyPath = receiver.path().child(DEFAULT_NAME);
+        ActorSelection receiverProxy = this.context().actorSelection(receiverProxyPath);
+        Link link = this.links.computeIfAbsent(receiverProxy.anchorPath().address(), address -> new Link());
+        ActorRef receiverProxyRef = this.receiverProxies.get(receiverProxyPath);
+        return new OutgoingTransfer(receiverProxyPath, receiverProxy, receiverProxyRef,
+                receiverProxyRef == null ? this.maxSelectionBatchSize : this.maxDirectBatchSize, link);
+    }
+
+    private void handleShared(ActorSelection receiverProxy, LargeMessage<?> message) {
+        Serializer serializer = serialization.findSerializerFor(message.getMessage());
+
+        long transferID = this.nextTransferID++;
+        this.sharedTransfers.put(transferID, new SharedTransfer(receiverProxy, message, this.sender(), serializer));
+
+        final ActorRef self = this.self();
+        CompletableFuture
+                .supplyAsync(() -> writeSharedFile(transferID, message.getMessage(), serializer), this.serializationExecutor)
+                .whenComplete((written, failure) -> self.tell(written != null ? written : new SharedFileWrittenMessage(transferID, null, -1, failure), ActorRef.noSender()));
+    }
+
+    private void handle(SharedFileWrittenMessage message) {
+        SharedTransfer transfer = this.sharedTransfers.get(message.getTransferID());
+        if (transfer == null)
+            return;
+
+        if (message.getFailure() != null) {
+            this.log().warning("Could not write the shared file of transfer {}; sending it via TCP: {}", message.getTransferID(), message.getFailure());
+            this.sharedTransfers.remove(message.getTransferID());
+            this.handleRemote(transfer.receiverProxy, transfer.message, transfer.sender);
+            return;
+        }
+
+        transfer.file = message.getFile();
+        transfer.lastAnswerNanos = System.nanoTime();
+        Object payload = transfer.message.getMessage();
+        transfer.receiverProxy.tell(new SharedLargeMessage(message.getTransferID(), transfer.sender, transfer.message.getReceiver(),
+                transfer.serializer.identifier(), Serializers.manifestFor(transfer.serializer, payload),
+                transfer.file.toString(), message.getLength()), this.self());
+    }
+
+    private void handle(AcceptLargeMessage message) {
+        this.sharedTransfers.remove(message.getTransferID());
+        this.outgoingTransfers.remove(message.getTransferID());
+    }
+
+    private void handle(SharedLargeMessage sharedLargeMessage) {
+        final ActorRef self = this.self();
+        final ActorRef senderProxy = this.sender();
+        this.sharedReads.add(new TransferKey(senderProxy, sharedLargeMessage.getTransferID()));
+        senderProxy.tell(new GrantCreditsMessage(sharedLargeMessage.getTransferID(), 0), self);
+        CompletableFuture
+                .supplyAsync(() -> this.readSharedFile(sharedLargeMessage), this.deserializationExecutor)
+                .whenComplete((message, failure) -> self.tell(new SharedFileReadMessage(senderProxy, sharedLargeMessage, message, failure), ActorRef.noSender()));
+    }
+
+    private void handle(SharedFileReadMessage message) {
+        SharedLargeMessage sharedLargeMessage = message.getSharedLargeMessage();
+        TransferKey transferKey = new TransferKey(message.getSenderProxy(), sharedLargeMessage.getTransferID());
+        this.sharedReads.remove(transferKey);
+        if (message.getFailure() != null) {
+            this.log().warning("Could not read the shared file {}: {}", sharedLargeMessage.getPath(), message.getFailure());
+            message.getSenderProxy().tell(new RejectLargeMessage(sharedLargeMessage.getTransferID()), this.self());
+            return;
+        }
+
+        this.deliveredTransfers.add(transferKey);
+        message.getSenderProxy().tell(new AcceptLargeMessage(sharedLargeMessage.getTransferID()), this.self());
+        sharedLargeMessage.getReceiver().tell(
+                new AssembledLargeMessage(message.getMessage(), sharedLargeMessage.getSender(), sharedLargeMessage.getReceiver()),
+                sharedLargeMessage.getSender());
+    }
+
+    private void handleRemote(ActorSelection receiverProxy, LargeMessage<?> message, ActorRef sender) {
+        this.handleRemote(receiverProxy, message, sender, 0);
+    }
 
-        receiverProxy
-                .tell(new PostLargeMessage(this.sender(), message.getReceiver(), serializerID, manifest),
-                        this.self());
+    private void handleRemote(ActorRef receiver, LargeMessage<?> message, ActorRef sender, int restarts) {
+        this.handleRemote(this.context().actorSelection(receiver.path().child(DEFAULT_NAME)), message, sender, restarts);
+    }
+
+    private void handleRemote(ActorSelection receiverProxy, LargeMessage<?> message, ActorRef sender, int restarts) {
+        Serializer serializer = serialization.findSerializerFor(message.getMessage());
+        String manifest = Serializers.manifestFor(serializer, message.getMessage());
+
+        long transferID = this.nextTransferID++;
+        OutgoingTransfer transfer = this.createTransfer(message.getReceiver());
+        transfer.message = message;
+        transfer.sender = sender;
+        transfer.restarts = restarts;
+        this.outgoingTransfers.put(transferID, transfer);
+
+        transfer.tell(new PreLargeMessage(transferID, sender, message.getReceiver(), serializer.identifier(), manifest,
+                Collections.emptyList()), this.self());
+        this.serializeAsync(transferID, message.getMessage(), serializer, () -> transfer.batchSize, transfer.serializationPermits);
+    }
+
+    /**
+     * Serializes (and compresses) the message on a separate thread that reports each batch as soon as it is filled, so
+     * that sending starts before serialization ends. With permits, every batch waits for a permit that returns when
+     * a batch is sent.
+     */
+    private void serializeAsync(long transferID, Object message, Serializer serializer, IntSupplier batchSize, Semaphore permits) {
+        final ActorRef self = this.self();
+        final BatchCompressor compressor = this.compressBatches ? new BatchCompressor() : null;
+        Consumer<ByteString> batchConsumer = batch -> {
+            if (permits != null)
+                permits.acquireUninterruptibly();
+            ByteString compressed = compressor == null ? null : compressor.compress(batch);
+            self.tell(compressed == null
+                    ? new SerializedBatchMessage(transferID, batch, 0, Crc32c.checksum(batch))
+                    : new SerializedBatchMessage(transferID, compressed, batch.length(), Crc32c.checksum(compressed)), ActorRef.noSender());
+        };
+        CompletableFuture
+                .runAsync(() -> serialize(message, serializer, batchSize, batchConsumer), this.serializationExecutor)
+                .whenComplete((result, failure) -> {
+                    if (compressor != null)
+                        compressor.close();
+                    self.tell(new SerializationCompletedMessage(transferID, failure), ActorRef.noSender());
+                });
+    }
+
+    private void handle(SerializedBatchMessage message) {
+        for (long transferID : this.broadcasts.getOrDefault(message.getTransferID(), Collections.singletonList(message.getTransferID()))) {
+            OutgoingTransfer transfer = this.outgoingTransfers.get(transferID);
+            if (transfer != null) {
+                transfer.serializedBatches.add(message);
+                this.send(transferID, transfer);
+            }
+        }
+    }
+
+    private void handle(SerializationCompletedMessage message) {
+        if (message.getFailure() != null)
+            this.log().error(message.getFailure(), "Could not serialize the message of transfer {}", message.getTransferID());
+
+        List<Long> broadcast = this.broadcasts.remove(message.getTransferID());
+        for (long transferID : broadcast != null ? broadcast : Collections.singletonList(message.getTransferID())) {
+            OutgoingTransfer transfer = this.outgoingTransfers.get(transferID);
+            if (transfer == null)
+                continue;
+
+            if (message.getFailure() != null) {
+                transfer.tell(new AbortLargeMessage(transferID), this.self());
+                this.outgoingTransfers.remove(transferID);
+                continue;
+            }
+
+            transfer.serialized = true;
+            this.send(transferID, transfer);
+        }
+    }
+
+    private void handle(GrantCreditsMessage message) {
+        if (!this.receiverProxies.containsKey(this.sender().path())) {
+            this.receiverProxies.put(this.sender().path(), this.sender());
+            this.context().watch(this.sender());
+        }
+
+        // Receivers of shared files acknowledge them and answer probes with empty grants while they read them
+        SharedTransfer sharedTransfer = this.sharedTransfers.get(message.getTransferID());
+        if (sharedTransfer != null) {
+            sharedTransfer.acknowledged = true;
+            sharedTransfer.lastAnswerNanos = System.nanoTime();
+            sharedTransfer.probes = 0;
+            return;
+        }
+
+        OutgoingTransfer transfer = this.outgoingTransfers.get(message.getTransferID());
+        if (transfer == null)
+            return;
+
+        long now = System.nanoTime();
+        transfer.lastAnswerNanos = now;
+        transfer.probes = 0;
+        if (!transfer.acknowledged) {
+            // The first grant answers the Pre and times the round trip
+            transfer.acknowledged = true;
+            transfer.link.sampleRoundTrip(now - transfer.startNanos);
+        }
+        if (message.getConsumedBatches() > transfer.acknowledgedBatches) {
+            long consumedBytes = 0;
+            for (int i = transfer.acknowledgedBatches; i < message.getConsumedBatches() && !transfer.unacknowledgedBatches.isEmpty(); i++)
+                consumedBytes += transfer.unacknowledgedBatches.remove().getBytes().length();
+            transfer.acknowledgedBatches = message.getConsumedBatches();
+            transfer.link.sampleThroughput(consumedBytes, now - transfer.lastCreditNanos);
+            transfer.lastCreditNanos = now;
+        }
+        transfer.batchSize = transfer.link.batchSize(transfer.maxBatchSize);
+
+        this.send(message.getTransferID(), transfer);
+    }
+
+    private void handle(ResendBatchesMessage message) {
+        OutgoingTransfer transfer = this.outgoingTransfers.get(message.getTransferID());
+        if (transfer == null)
+            return;
+
+        transfer.lastAnswerNanos = System.nanoTime();
+        transfer.probes = 0;
+
+        // Only batches that the receiver has not consumed yet can be missing, and exactly these are kept
+        int sequenceNumber = transfer.acknowledgedBatches;
+        for (SerializedBatchMessage batch : transfer.unacknowledgedBatches) {
+            if (sequenceNumber >= message.getToSequenceNumber())
+                break;
+            if (sequenceNumber >= message.getFromSequenceNumber())
+                transfer.tell(bytesBatch(message.getTransferID(), sequenceNumber, batch), this.self());
+            sequenceNumber++;
+        }
+    }
+
+    private void handle(CheckStalledTransfersMessage message) {
+        long now = System.nanoTime();
+        Map<Long, OutgoingTransfer> silentBroadcasts = new LinkedHashMap<>();
+        for (Iterator<Map.Entry<Long, OutgoingTransfer>> iterator = this.outgoingTransfers.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Long, OutgoingTransfer> entry = iterator.next();
+            OutgoingTransfer transfer = entry.getValue();
+
+            // A transfer waits for its receiver only while it has sent batches or its end
+            if (transfer.unacknowledgedBatches.isEmpty() && !transfer.posted)
+                continue;
+            if (now - transfer.lastAnswerNanos < TimeUnit.MILLISECONDS.toNanos(STALL_TIMEOUT_MILLIS))
+                continue;
+
+            if (++transfer.probes > MAX_PROBES) {
+                this.log().warning("Giving up transfer {}, because {} has not answered", entry.getKey(), transfer.receiverProxyPath);
+                iterator.remove();
+                transfer.serializationPermits.release(Integer.MAX_VALUE / 2);
+                transfer.tell(new AbortLargeMessage(entry.getKey()), this.self());
+                if (transfer.group != null)
+                    silentBroadcasts.put(entry.getKey(), transfer);
+                continue;
+            }
+            transfer.lastAnswerNanos = now;
+            transfer.tell(new ProbeLargeMessage(entry.getKey(), transfer.sentBatches, transfer.posted), this.self());
+        }
+
+        // A shared file occupies memory until its receiver deletes it, so files of receivers that do not answer are
+        // deleted and their messages sent via TCP instead
+        List<SharedTransfer> fallbacks = new ArrayList<>();
+        for (Iterator<Map.Entry<Long, SharedTransfer>> iterator = this.sharedTransfers.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Long, SharedTransfer> entry = iterator.next();
+            SharedTransfer transfer = entry.getValue();
+            if (transfer.file == null || now - transfer.lastAnswerNanos < TimeUnit.MILLISECONDS.toNanos(STALL_TIMEOUT_MILLIS))
+                continue;
+
+            if (++transfer.probes > MAX_PROBES) {
+                this.log().warning("Sending transfer {} via TCP, because {} has not answered", entry.getKey(), transfer.receiverProxy);
+                iterator.remove();
+                deleteSharedFile(transfer.file);
+                fallbacks.add(transfer);
+                continue;
+            }
+            transfer.lastAnswerNanos = now;
+            transfer.receiverProxy.tell(new ProbeLargeMessage(entry.getKey(), 0, true), this.self());
+        }
+        for (SharedTransfer transfer : fallbacks)
+            this.handleRemote(transfer.receiverProxy, transfer.message, transfer.sender);
+        // The other receivers of a silent relay's group need not be silent, too
+        silentBroadcasts.forEach((transferID, transfer) -> this.restart(transferID, transfer, transfer.receiverProxyPath.address()));
+
+        // The sender of an idle transfer has given up or lost the Abort; the Reject lets it start over if it is still alive
+        for (Iterator<Map.Entry<TransferKey, IncomingTransfer>> iterator = this.incomingTransfers.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<TransferKey, IncomingTransfer> entry = iterator.next();
+            if (now - entry.getValue().lastHeardNanos < TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MILLIS))
+                continue;
+
+            TransferKey transferKey = entry.getKey();
+            this.log().warning("Dropping transfer {}, because {} has not sent anything for a while", transferKey.getTransferID(), transferKey.getSenderProxy());
+            iterator.remove();
+            this.abort(entry.getValue());
+            transferKey.getSenderProxy().tell(new RejectLargeMessage(transferKey.getTransferID()), this.self());
+        }
+    }
+
+    private void send(long transferID, OutgoingTransfer transfer) {
+        // The first window is granted implicitly, so that small messages are sent without waiting for a round trip
+        while (transfer.sentBatches < transfer.acknowledgedBatches + DEFAULT_WINDOW && !transfer.serializedBatches.isEmpty()) {
+            SerializedBatchMessage batch = transfer.serializedBatches.remove();
+            if (transfer.unacknowledgedBatches.isEmpty())
+                transfer.lastCreditNanos = System.nanoTime();
+            transfer.unacknowledgedBatches.add(batch);
+            transfer.tell(bytesBatch(transferID, transfer.sentBatches++, batch), this.self());
+            transfer.serializationPermits.release();
+        }
+
+        // The transfer is kept until the receiver accepts it, so that lost batches can still be sent again
+        if (transfer.serialized && transfer.serializedBatches.isEmpty() && !transfer.posted) {
+            transfer.tell(new PostLargeMessage(transferID, transfer.sentBatches), this.self());
+            transfer.posted = true;
+        }
+    }
+
+    private static BytesBatchMessage bytesBatch(long transferID, int sequenceNumber, SerializedBatchMessage batch) {
+        return new BytesBatchMessage(transferID, sequenceNumber, batch.getBytes(), batch.getRawLength(), batch.getChecksum());
     }
 
     private void handle(BytesBatchMessage message) {
-        // Reassemble the message content, deserialize it and/or load the content from some local location before forwarding its content.
-        receiverProxyAssembler.put(message.getBytes());
+        TransferKey transferKey = new TransferKey(this.sender(), message.getTransferID());
+        IncomingTransfer transfer = this.incomingTransfers.get(transferKey);
+        if (transfer == null) {
+            if (!this.deliveredTransfers.contains(transferKey))
+                this.log().warning("Received a batch of unknown transfer {} from {}", message.getTransferID(), this.sender());
+            return;
+        }
+
+        transfer.lastHeardNanos = System.nanoTime();
+        if (transfer.nextArrival < message.getSequenceNumber())
+            this.requestBatches(transferKey, transfer, transfer.nextArrival, message.getSequenceNumber());
+        transfer.nextArrival = Math.max(transfer.nextArrival, message.getSequenceNumber() + 1);
+
+        // Batches are verified on threads of their own, which may report them out of order; their sequence numbers restore it.
+        // The transfer threads cannot verify them, because they may all be blocked by deserializations that wait for batches.
+        final ActorRef self = this.self();
+        CompletableFuture
+                .supplyAsync(() -> Crc32c.checksum(message.getBytes()) == message.getChecksum(), this.verificationExecutor)
+                .whenComplete((intact, failure) -> self.tell(new BatchVerifiedMessage(transferKey, message, intact != null && intact), ActorRef.noSender()));
+    }
+
+    private void handle(BatchVerifiedMessage message) {
+        TransferKey transferKey = message.getTransferKey();
+        IncomingTransfer transfer = this.incomingTransfers.get(transferKey);
+        if (transfer == null)
+            return;
+
+        // Resent batches may arrive twice, e.g. if a probe has asked for batches that were only waiting for verification
+        int sequenceNumber = message.getBatch().getSequenceNumber();
+        if (sequenceNumber < transfer.nextBatch || transfer.earlyBatches.containsKey(sequenceNumber))
+            return;
+
+        if (!message.isIntact()) {
+            this.log().warning("Batch {} of transfer {} from {} is corrupt", sequenceNumber, transferKey.getTransferID(), transferKey.getSenderProxy());
+            this.requestBatches(transferKey, transfer, sequenceNumber, sequenceNumber + 1);
+            return;
+        }
+
+        transfer.earlyBatches.put(sequenceNumber, message.getBatch());
+        for (BytesBatchMessage batch; (batch = transfer.earlyBatches.remove(transfer.nextBatch)) != null; transfer.nextBatch++)
+            this.accept(transfer, batch);
+        this.end(transferKey, transfer);
+    }
+
+    private void accept(IncomingTransfer transfer, BytesBatchMessage batch) {
+        for (long relayID : transfer.relays) {
+            OutgoingTransfer relay = this.outgoingTransfers.get(relayID);
+            if (relay != null) {
+                relay.serializedBatches.add(new SerializedBatchMessage(relayID, batch.getBytes(), batch.getRawLength(), batch.getChecksum()));
+                this.send(relayID, relay);
+            }
+        }
+
+        if (batch.getRawLength() == 0)
+            transfer.batches.add(batch.getBytes().asByteBuffer());
+        else
+            transfer.batches.add(() -> ByteBuffer.wrap(BatchCompressor.decompress(batch.getBytes(), batch.getRawLength())));
+    }
+
+    /**
+     * Asks the sender for the batches in the given range that have not been verified yet; batches that did arrive
+     * split the request, so that only the missing ones are sent again.
+     */
+    private void requestBatches(TransferKey transferKey, IncomingTransfer transfer, int from, int to) {
+        for (int start = from, end; start < to; start = end) {
+            if (transfer.earlyBatches.containsKey(start)) {
+                end = start + 1;
+                continue;
+            }
+            for (end = start + 1; end < to && !transfer.earlyBatches.containsKey(end); end++);
+
+            this.log().info("Requesting batches {} to {} of transfer {} from {} again", start, end - 1, transferKey.getTransferID(), transferKey.getSenderProxy());
+            transferKey.getSenderProxy().tell(new ResendBatchesMessage(transferKey.getTransferID(), start, end), this.self());
+        }
+    }
+
+    private void handle(ProbeLargeMessage message) {
+        TransferKey transferKey = new TransferKey(this.sender(), message.getTransferID());
+        if (this.sharedReads.contains(transferKey)) {
+            this.sender().tell(new GrantCreditsMessage(message.getTransferID(), 0), this.self());
+            return;
+        }
+
+        IncomingTransfer transfer = this.incomingTransfers.get(transferKey);
+        if (transfer == null) {
+            // Either the acceptance got lost, or this proxy has never known the transfer, e.g. because it has been restarted
+            this.sender().tell(this.deliveredTransfers.contains(transferKey)
+                    ? new AcceptLargeMessage(message.getTransferID())
+                    : new RejectLargeMessage(message.getTransferID()), this.self());
+            return;
+        }
+
+        transfer.lastHeardNanos = System.nanoTime();
+        this.sender().tell(new GrantCreditsMessage(message.getTransferID(), transfer.consumedBatches), this.self());
+        if (message.isPosted() && transfer.numBatches < 0)
+            transfer.numBatches = message.getSentBatches();
+        this.requestBatches(transferKey, transfer, transfer.nextBatch, message.getSentBatches());
+        transfer.nextArrival = Math.max(transfer.nextArrival, message.getSentBatches());
+        this.end(transferKey, transfer);
+    }
+
+    private void handle(BatchConsumedMessage message) {
+        IncomingTransfer transfer = this.incomingTransfers.get(message.getTransferKey());
+        if (transfer == null)
+            return;
+
+        // Credits return only for batches that the deserialization has consumed, so that at most a window of batches is buffered
+        if (++transfer.consumedBatches % CREDIT_BATCH == 0) {
+            TransferKey transferKey = message.getTransferKey();
+            transferKey.getSenderProxy().tell(new GrantCreditsMessage(transferKey.getTransferID(), transfer.consumedBatches), this.self());
+        }
+    }
+
+    private void handle(Terminated message) {
+        // A dead sender never ends its transfers, so they are aborted to free their deserialization threads
+        for (Iterator<Map.Entry<TransferKey, IncomingTransfer>> iterator = this.incomingTransfers.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<TransferKey, IncomingTransfer> entry = iterator.next();
+            if (entry.getKey().getSenderProxy().equals(message.getActor())) {
+                this.log().warning("Aborting transfer {}, because its sender {} has terminated", entry.getKey().getTransferID(), message.getActor());
+                iterator.remove();
+                this.abort(entry.getValue());
+            }
+        }
+
+        ActorPath receiverProxyPath = message.getActor().path();
+        this.receiverProxies.remove(receiverProxyPath);
+
+        // A restarted receiver has lost what it had deserialized, so its transfers start over
+        Map<Long, OutgoingTransfer> restarts = new LinkedHashMap<>();
+        for (Iterator<Map.Entry<Long, OutgoingTransfer>> iterator = this.outgoingTransfers.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Long, OutgoingTransfer> entry = iterator.next();
+            if (entry.getValue().receiverProxyPath.equals(receiverProxyPath)) {
+                iterator.remove();
+                restarts.put(entry.getKey(), entry.getValue());
+            }
+        }
+        restarts.forEach((transferID, transfer) -> this.restart(transferID, transfer, receiverProxyPath.address()));
+    }
+
+    /**
+     * Starts a transfer that has been removed over as a new transfer. A broadcast or relay transfer starts over as
+     * point-to-point transfers to all receivers of its group, except those in the system that has been lost, if any.
+     */
+    private void restart(long transferID, OutgoingTransfer transfer, Address lostSystem) {
+        transfer.serializationPermits.release(Integer.MAX_VALUE / 2);
+        if (transfer.restarts >= MAX_RESTARTS) {
+            this.log().error("Giving up transfer {} to {} after {} restarts", transferID, transfer.receiverProxyPath, transfer.restarts);
+            return;
+        }
+        if (transfer.message != null) {
+            this.handleRemote(transfer.receiverProxy, transfer.message, transfer.sender, transfer.restarts + 1);
+            return;
+        }
+
+        List<ActorRef> receivers = new ArrayList<>();
+        for (ActorRef receiver : transfer.group)
+            if (!receiver.path().address().equals(lostSystem))
+                receivers.add(receiver);
+        if (receivers.isEmpty())
+            return;
+
+        this.log().warning("Sending broadcast transfer {} to {} receivers point-to-point, because {} has lost it", transferID, receivers.size(), transfer.receiverProxyPath);
+        if (transfer.payload != null) {
+            for (ActorRef receiver : receivers)
+                this.handleRemote(receiver, new LargeMessage<>(transfer.payload, receiver), transfer.sender, transfer.restarts + 1);
+            return;
+        }
+        // A relay whose own transfer fails, too, leaves the fallback to the relay or sender before it
+        IncomingTransfer incoming = this.incomingTransfers.get(transfer.relayOf);
+        if (incoming != null)
+            incoming.fallbackReceivers.addAll(receivers);
     }
 
     private void handle(LocalMessage<?> message) {
@@ -172,31 +1237,139 @@ public class LargeMessageProxy extends AbstractLoggingActor {
     // Actor Utils    //
     ////////////////////
 
-    private <T> byte[] serialize(T message, Serialization serialization) {
-        return serialization.serialize(message).get();
+    private static boolean isRemote(ActorRef actor) {
+        return actor.path().address().hasGlobalScope();
+    }
+
+    private static Path sharedMemoryDirectory() {
+        Path shm = Paths.get("/dev/shm");
+        return Files.isDirectory(shm) && Files.isWritable(shm) ? shm : Paths.get(System.getProperty("java.io.tmpdir"));
     }
 
-    private Object deserialize(byte[] bytes, PostLargeMessage serializationInfo) {
-        int serializerID = serializationInfo.getSerializerID();
-        String manifest = serializationInfo.getManifest();
-        return serialization.deserialize(bytes, serializerID, manifest).get();
+    /**
+     * A remote system runs on this host if its host name resolves to an address of one of this host's interfaces.
+     */
+    private static boolean isSameHost(Address address) {
+        if (!address.host().isDefined())
+            return false;
+        try {
+            InetAddress inetAddress = InetAddress.getByName(address.host().get());
+            return inetAddress.isLoopbackAddress() || NetworkInterface.getByInetAddress(inetAddress) != null;
+        } catch (UnknownHostException | SocketException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Serializes the message into a new file in the shared memory directory, which is a tmpfs on Linux, so that the
+     * bytes never touch a disk.
+     */
+    private static SharedFileWrittenMessage writeSharedFile(long transferID, Object message, Serializer serializer) {
+        Path file = null;
+        try {
+            file = Files.createTempFile(SHARED_MEMORY_DIRECTORY, SHARED_FILE_PREFIX, ".bin");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                serialize(message, serializer, () -> DEFAULT_BATCH_SIZE, batch -> {
+                    try {
+                        for (ByteBuffer buffer = batch.asByteBuffer(); buffer.hasRemaining(); )
+                            channel.write(buffer);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                return new SharedFileWrittenMessage(transferID, file, channel.size(), null);
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteSharedFile(file);
+            throw e instanceof IOException ? new UncheckedIOException((IOException) e) : (RuntimeException) e;
+        }
+    }
+
+    /**
+     * Maps the shared file and deserializes the message in place. The file is deleted right away; its mapping stays valid.
+     * The mapping is private, i.e. copy-on-write, because Kryo briefly modifies the bytes of ASCII strings while reading them.
+     */
+    private Object readSharedFile(SharedLargeMessage sharedLargeMessage) {
+        Path file = sharedFile(sharedLargeMessage.getPath());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, LinkOption.NOFOLLOW_LINKS)) {
+            if (channel.size() != sharedLargeMessage.getLength())
+                throw new IOException("The shared file " + file + " has " + channel.size() + " instead of " + sharedLargeMessage.getLength() + " bytes");
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.PRIVATE, 0, sharedLargeMessage.getLength());
+            deleteSharedFile(file);
+
+            Serializer serializer = serialization.serializerByIdentity().apply(sharedLargeMessage.getSerializerID());
+            if (serializer instanceof AkkaSerializer)
+                return ((AkkaSerializer) serializer).kryoInstantiator().newKryo().readClassAndObject(new ByteBufferInput(buffer));
+            return serialization.deserializeByteBuffer(buffer, sharedLargeMessage.getSerializerID(), sharedLargeMessage.getManifest());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The receiver deletes the files that it reads, so it accepts only files that a proxy may have written, i.e. files
+     * directly inside the shared memory directory whose names start with the shared file prefix.
+     */
+    private static Path sharedFile(String path) {
+        Path file = Paths.get(path).toAbsolutePath().normalize();
+        Path directory = SHARED_MEMORY_DIRECTORY.toAbsolutePath().normalize();
+        if (!directory.equals(file.getParent()) || !file.getFileName().toString().startsWith(SHARED_FILE_PREFIX))
+            throw new IllegalArgumentException(path + " is not a shared file");
+        return file;
     }
 
-    private static byte[][] splitSerializedObject(byte[] bytes) {
-        final int length = bytes.length;
-        if (DEFAULT_BATCH_SIZE > length) {
-            return new byte[][]{bytes};
+    private static void deleteSharedFile(Path file) {
+        if (file == null)
+            return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            file.toFile().deleteOnExit();
         }
-        final int numberOfBatches = (length + DEFAULT_BATCH_SIZE - 1) / DEFAULT_BATCH_SIZE;
-        byte[][] batches = new byte[numberOfBatches][];
-        int batchIndex = 0;
+    }
 
-        for (int batchStartIndex = 0; batchStartIndex < length - DEFAULT_BATCH_SIZE + 1; batchStartIndex += DEFAULT_BATCH_SIZE) {
-            batches[batchIndex++] = Arrays.copyOfRange(bytes, batchStartIndex, batchStartIndex + DEFAULT_BATCH_SIZE);
+    private int maxBatchSize(String frameSizePath) {
+        long frameSize = this.context().system().settings().config().getBytes(frameSizePath);
+        return (int) Math.max(MIN_BATCH_SIZE, frameSize - FRAME_OVERHEAD);
+    }
+
+    /**
+     * Serializes the message into batches of the current batch size. Kryo-serialized messages are written
+     * straight into the batch buffers in the serializer's format; all others are serialized at once and then
+     * sliced into views of the serialized bytes.
+     */
+    private static void serialize(Object message, Serializer serializer, IntSupplier batchSize, Consumer<ByteString> batchConsumer) {
+        if (serializer instanceof AkkaSerializer) {
+            try (ChunkedOutput output = new ChunkedOutput(batchSize, batch -> batchConsumer.accept(ByteString.fromArrayUnsafe(batch)))) {
+                ((AkkaSerializer) serializer).kryoInstantiator().newKryo().writeClassAndObject(output, message);
+            }
+            return;
         }
-        if (length % DEFAULT_BATCH_SIZE != 0) {
-            batches[batchIndex] = Arrays.copyOfRange(bytes, length - (length % DEFAULT_BATCH_SIZE), length);
+
+        ByteString bytes = ByteString.fromArrayUnsafe(serializer.toBinary(message));
+        for (int from = 0, to; from < bytes.length(); from = to) {
+            to = Math.min(bytes.length(), from + batchSize.getAsInt());
+            batchConsumer.accept(bytes.slice(from, to));
+        }
+    }
+
+    /**
+     * Deserializes the message while its batches arrive. Kryo-serialized messages are read straight from the
+     * batches; all others are deserialized once all batches have arrived.
+     */
+    private Object deserialize(InputStream batches, int serializerID, String manifest) {
+        Serializer serializer = serialization.serializerByIdentity().apply(serializerID);
+        if (serializer instanceof AkkaSerializer)
+            return ((AkkaSerializer) serializer).kryoInstantiator().newKryo().readClassAndObject(new Input(batches, DEFAULT_BATCH_SIZE));
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[DEFAULT_BATCH_SIZE];
+            for (int count = batches.read(buffer); count >= 0; count = batches.read(buffer))
+                bytes.write(buffer, 0, count);
+            return serialization.deserialize(bytes.toByteArray(), serializerID, manifest).get();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return batches;
     }
 }
@@ -3,10 +3,12 @@ package de.hpi.ddm.actors;
 import akka.actor.*;
 import de.hpi.ddm.structures.BloomFilter;
 import lombok.Data;
+import scala.concurrent.duration.Duration;
 
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class Master extends AbstractLoggingActor {
 
@@ -15,6 +17,7 @@ public class Master extends AbstractLoggingActor {
 	////////////////////////
 	
 	public static final String DEFAULT_NAME = "master";
+	public static final int REGISTRATION_WINDOW_MILLIS = 100;	// Workers that register within this window receive the data in one broadcast
 
 	public static Props props() {
 		return Props.create(Master.class);
@@ -34,11 +37,16 @@ public class Master extends AbstractLoggingActor {
 		private static final long serialVersionUID = 3303081601659723997L;
 	}
 	
+	@Data
+	private static class BroadcastDataMessage {
+	}
+	
 	/////////////////
 	// Actor State //
 	/////////////////
 
 	private final List<ActorRef> workers = new ArrayList<>();
+	private final List<ActorRef> unservedWorkers = new ArrayList<>();
 	private final ActorRef largeMessageProxy = this.context().actorOf(LargeMessageProxy.props(), LargeMessageProxy.DEFAULT_NAME);
 	private final BloomFilter data = new BloomFilter(BloomFilter.DEFAULT_SIZE, true);
 	
@@ -63,6 +71,7 @@ public class Master extends AbstractLoggingActor {
 				.match(EndMessage.class, this::handle)
 				.match(Terminated.class, this::handle)
 				.match(RegistrationMessage.class, this::handle)
+				.match(BroadcastDataMessage.class, this::handle)
 				.matchAny(object -> this.log().info("Received unknown message: \"{}\"", object.toString()))
 				.build();
 	}
@@ -87,12 +96,26 @@ public class Master extends AbstractLoggingActor {
 		this.workers.add(this.sender());
 		this.log().info("Registered {}", this.sender());
 
-		this.largeMessageProxy.tell(new LargeMessageProxy.LargeMessage<>(this.data, this.sender()), this.self());
+		// Workers usually register in bursts, so the data is serialized once for all workers of a burst
+		if (this.unservedWorkers.isEmpty())
+			this.context().system().scheduler().scheduleOnce(
+					Duration.create(REGISTRATION_WINDOW_MILLIS, TimeUnit.MILLISECONDS),
+					this.self(), new BroadcastDataMessage(), this.context().dispatcher(), this.self());
+		this.unservedWorkers.add(this.sender());
+	}
+	
+	protected void handle(BroadcastDataMessage message) {
+		if (this.unservedWorkers.isEmpty())
+			return;
+		
+		this.largeMessageProxy.tell(new LargeMessageProxy.BroadcastLargeMessage<>(this.data, new ArrayList<>(this.unservedWorkers), true), this.self());
+		this.unservedWorkers.clear();
 	}
 	
 	protected void handle(Terminated message) {
 		this.context().unwatch(message.getActor());
 		this.workers.remove(message.getActor());
+		this.unservedWorkers.remove(message.getActor());
 		
 		if (this.workers.isEmpty())
 			this.self().tell(PoisonPill.getInstance(), this.self());
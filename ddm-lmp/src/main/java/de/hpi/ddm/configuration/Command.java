@@ -14,4 +14,10 @@ public abstract class Command {
 
 	@Parameter(names = { "-w", "--numWorkers" }, description = "The number of workers (indexers/validators) to start locally; should be at least one if the algorithm is started standalone (otherwise there are no workers to run the discovery)", required = false)
 	int numWorkers = ConfigurationSingleton.get().getNumWorkers();
+
+	@Parameter(names = { "-z", "--compress" }, description = "Compress the batches of large messages that this system sends, unless the first batches turn out to be incompressible", required = false)
+	boolean compressBatches = ConfigurationSingleton.get().isCompressBatches();
+
+	@Parameter(names = { "-shm", "--sharedMemory" }, description = "Pass large messages to actor systems on the same host through shared memory files instead of TCP", required = false)
+	boolean sharedMemory = ConfigurationSingleton.get().isSharedMemory();
 }
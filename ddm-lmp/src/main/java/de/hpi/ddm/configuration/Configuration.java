@@ -22,6 +22,10 @@ public class Configuration {
 	
 	private int dataSize = 20; 						// Size of the data message (in MB) with which each worker should be initialized
 	
+	private boolean compressBatches = false;		// Compress the batches of outgoing large messages if they are compressible
+	
+	private boolean sharedMemory = false;			// Pass large messages to actor systems on the same host through shared memory files
+	
 	private static String getDefaultHost() {
         try {
             return InetAddress.getLocalHost().getHostAddress();
@@ -35,6 +39,8 @@ public class Configuration {
 		this.port = commandMaster.port;
 		this.numWorkers = commandMaster.numWorkers;
 		this.dataSize = commandMaster.dataSize;
+		this.compressBatches = commandMaster.compressBatches;
+		this.sharedMemory = commandMaster.sharedMemory;
 	}
 
 	public void update(CommandSlave commandSlave) {
@@ -43,5 +49,7 @@ public class Configuration {
 		this.masterHost = commandSlave.masterhost;
 		this.masterPort = commandSlave.masterport;
 		this.numWorkers = commandSlave.numWorkers;
+		this.compressBatches = commandSlave.compressBatches;
+		this.sharedMemory = commandSlave.sharedMemory;
 	}
 }
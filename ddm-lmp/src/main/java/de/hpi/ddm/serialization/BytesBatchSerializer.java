@@ -0,0 +1,84 @@
+package de.hpi.ddm.serialization;
+
+import akka.serialization.ByteBufferSerializer;
+import akka.serialization.SerializerWithStringManifest;
+import akka.util.ByteString;
+import de.hpi.ddm.actors.LargeMessageProxy.BytesBatchMessage;
+
+import java.io.NotSerializableException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Frames the batches of large message transfers as their transfer ID, sequence number, raw length and checksum followed
+ * by the batch bytes. Artery passes its envelope buffer to this serializer, so a batch's bytes are copied only once,
+ * straight into that buffer.
+ */
+public class BytesBatchSerializer extends SerializerWithStringManifest implements ByteBufferSerializer {
+
+	public static final int IDENTIFIER = 1830571;
+
+	private static final String BYTES_BATCH_MANIFEST = "B";
+	private static final int HEADER_SIZE = Long.BYTES + 3 * Integer.BYTES;
+
+	@Override
+	public int identifier() {
+		return IDENTIFIER;
+	}
+
+	@Override
+	public String manifest(Object o) {
+		if (o instanceof BytesBatchMessage)
+			return BYTES_BATCH_MANIFEST;
+		throw new IllegalArgumentException("Cannot serialize " + o.getClass().getName());
+	}
+
+	@Override
+	public byte[] toBinary(Object o) {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + ((BytesBatchMessage) o).getBytes().length());
+		this.toBinary(o, buffer);
+		return buffer.array();
+	}
+
+	@Override
+	public void toBinary(Object o, ByteBuffer buffer) {
+		BytesBatchMessage message = (BytesBatchMessage) o;
+		if (buffer.remaining() < HEADER_SIZE + message.getBytes().length())
+			throw new BufferOverflowException();
+		
+		buffer.putLong(message.getTransferID());
+		buffer.putInt(message.getSequenceNumber());
+		buffer.putInt(message.getRawLength());
+		buffer.putInt(message.getChecksum());
+		message.getBytes().copyToBuffer(buffer);
+	}
+
+	@Override
+	public Object fromBinary(byte[] bytes, String manifest) throws NotSerializableException {
+		checkManifest(manifest);
+		ByteBuffer header = ByteBuffer.wrap(bytes);
+		long transferID = header.getLong();
+		int sequenceNumber = header.getInt();
+		int rawLength = header.getInt();
+		int checksum = header.getInt();
+		return new BytesBatchMessage(transferID, sequenceNumber, ByteString.fromArrayUnsafe(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE), rawLength, checksum);
+	}
+
+	@Override
+	public Object fromBinary(ByteBuffer buffer, String manifest) throws NotSerializableException {
+		checkManifest(manifest);
+		long transferID = buffer.getLong();
+		int sequenceNumber = buffer.getInt();
+		int rawLength = buffer.getInt();
+		int checksum = buffer.getInt();
+		// Artery reuses its buffers, so the bytes must be copied out of it
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return new BytesBatchMessage(transferID, sequenceNumber, ByteString.fromArrayUnsafe(bytes), rawLength, checksum);
+	}
+
+	private static void checkManifest(String manifest) throws NotSerializableException {
+		if (!BYTES_BATCH_MANIFEST.equals(manifest))
+			throw new NotSerializableException("Unknown manifest " + manifest);
+	}
+}
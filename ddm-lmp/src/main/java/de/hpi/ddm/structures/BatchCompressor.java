@@ -0,0 +1,71 @@
+package de.hpi.ddm.structures;
+
+import akka.util.ByteString;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Compresses the batches of one transfer independently of each other, so that every batch can be decompressed as
+ * soon as it arrives. The first batches are samples: if they do not shrink enough, the data is considered
+ * incompressible (e.g. randomized bit sets) and all further batches are passed on without spending time on them.
+ */
+public class BatchCompressor implements AutoCloseable {
+
+	public static final int SAMPLE_BATCHES = 2;
+	public static final double MAX_COMPRESSION_RATIO = 0.9;	// Compressed batches must save at least 10% of their bytes
+
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private int sampledBatches = 0;
+	private long sampledRawBytes = 0;
+	private long sampledCompressedBytes = 0;
+	private boolean enabled = true;
+
+	/**
+	 * @return the compressed batch or null, if the batch should be sent as it is
+	 */
+	public ByteString compress(ByteString batch) {
+		if (!this.enabled)
+			return null;
+
+		byte[] raw = batch.toArray();
+		byte[] compressed = new byte[(int) (raw.length * MAX_COMPRESSION_RATIO)];
+		this.deflater.reset();
+		this.deflater.setInput(raw);
+		this.deflater.finish();
+		int length = this.deflater.deflate(compressed);
+		boolean shrunk = this.deflater.finished();
+
+		if (this.sampledBatches < SAMPLE_BATCHES) {
+			this.sampledBatches++;
+			this.sampledRawBytes += raw.length;
+			this.sampledCompressedBytes += shrunk ? length : raw.length;
+			if (this.sampledBatches == SAMPLE_BATCHES)
+				this.enabled = this.sampledCompressedBytes <= this.sampledRawBytes * MAX_COMPRESSION_RATIO;
+		}
+		return shrunk ? ByteString.fromArrayUnsafe(compressed, 0, length) : null;
+	}
+
+	public static byte[] decompress(ByteString compressed, int rawLength) throws ZipException {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed.toArray());
+			byte[] raw = new byte[rawLength];
+			int length = inflater.inflate(raw);
+			if (length != rawLength || !inflater.finished())
+				throw new ZipException("The batch does not decompress to " + rawLength + " bytes");
+			return raw;
+		} catch (DataFormatException e) {
+			throw new ZipException(e.getMessage());
+		} finally {
+			inflater.end();
+		}
+	}
+
+	@Override
+	public void close() {
+		this.deflater.end();
+	}
+}
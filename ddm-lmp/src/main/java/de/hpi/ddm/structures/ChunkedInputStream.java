@@ -0,0 +1,106 @@
+package de.hpi.ddm.structures;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * An input stream over chunks that arrive while it is being read. Reads block until the next chunk is added or
+ * the stream is ended; a callback reports every chunk that has been read completely. Chunks may be added in an
+ * encoded form, in which case they are decoded by the reading thread.
+ */
+public class ChunkedInputStream extends InputStream {
+
+	@FunctionalInterface
+	public interface Chunk {
+		ByteBuffer decode() throws IOException;
+	}
+
+	private static final Chunk END = () -> null;
+	private static final Chunk ABORT = () -> null;
+
+	private final BlockingDeque<Chunk> chunks = new LinkedBlockingDeque<>();
+	private final Runnable chunkConsumed;
+
+	private ByteBuffer chunk = null;
+	private boolean ended = false;
+
+	public ChunkedInputStream(Runnable chunkConsumed) {
+		this.chunkConsumed = chunkConsumed;
+	}
+
+	public void add(ByteBuffer chunk) {
+		this.chunks.add(() -> chunk);
+	}
+
+	public void add(Chunk chunk) {
+		this.chunks.add(chunk);
+	}
+
+	/**
+	 * Marks the end of the stream after all chunks that have been added.
+	 */
+	public void end() {
+		this.chunks.add(END);
+	}
+
+	/**
+	 * Discards all chunks that have not been read yet and fails the next read.
+	 */
+	public void abort() {
+		this.chunks.clear();
+		this.chunks.addFirst(ABORT);
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return this.read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		if (!this.next())
+			return -1;
+
+		int count = Math.min(len, this.chunk.remaining());
+		this.chunk.get(b, off, count);
+
+		if (!this.chunk.hasRemaining())
+			this.chunkConsumed.run();
+		return count;
+	}
+
+	@Override
+	public int available() {
+		return this.chunk == null ? 0 : this.chunk.remaining();
+	}
+
+	private boolean next() throws IOException {
+		while (this.chunk == null || !this.chunk.hasRemaining()) {
+			if (this.ended)
+				return false;
+
+			Chunk next;
+			try {
+				next = this.chunks.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+
+			if (next == ABORT)
+				throw new IOException("The stream has been aborted");
+			if (next == END)
+				this.ended = true;
+			else
+				this.chunk = next.decode();
+		}
+		return true;
+	}
+}
@@ -0,0 +1,43 @@
+package de.hpi.ddm.structures;
+
+import com.esotericsoftware.kryo.io.Output;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/**
+ * A Kryo output that hands every filled buffer to a consumer as one chunk and continues with a fresh buffer,
+ * so that chunks can be sent while the rest of the object is still being serialized. The size of every fresh buffer
+ * is taken from a supplier, so the chunk size may change while an object is being serialized.
+ */
+public class ChunkedOutput extends Output {
+
+	private final IntSupplier chunkSize;
+	private final Consumer<byte[]> chunkConsumer;
+
+	public ChunkedOutput(int chunkSize, Consumer<byte[]> chunkConsumer) {
+		this(() -> chunkSize, chunkConsumer);
+	}
+
+	public ChunkedOutput(IntSupplier chunkSize, Consumer<byte[]> chunkConsumer) {
+		super(chunkSize.getAsInt());
+		this.chunkSize = chunkSize;
+		this.chunkConsumer = chunkConsumer;
+	}
+
+	/**
+	 * Emits the buffered bytes as a chunk; only the last chunk of an object should be smaller than the chunk size.
+	 */
+	@Override
+	public void flush() {
+		if (this.position == 0)
+			return;
+		
+		this.chunkConsumer.accept(this.position == this.capacity ? this.buffer : Arrays.copyOf(this.buffer, this.position));
+		this.total += this.position;
+		this.capacity = this.maxCapacity = this.chunkSize.getAsInt();
+		this.buffer = new byte[this.capacity];
+		this.position = 0;
+	}
+}
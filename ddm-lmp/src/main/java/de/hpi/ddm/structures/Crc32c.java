@@ -0,0 +1,72 @@
+package de.hpi.ddm.structures;
+
+import akka.util.ByteString;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The CRC-32C (Castagnoli) checksum, which Java 8 does not provide yet. Eight lookup tables let it process eight
+ * bytes per step ("slicing-by-8"), which keeps verifying the batches of a transfer far cheaper than sending them.
+ */
+public class Crc32c {
+
+	private static final int POLYNOMIAL = 0x82F63B78;	// The Castagnoli polynomial in reversed bit order
+	private static final int[][] TABLES = new int[8][256];
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	static {
+		for (int n = 0; n < 256; n++) {
+			int crc = n;
+			for (int k = 0; k < 8; k++)
+				crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+			TABLES[0][n] = crc;
+		}
+		for (int n = 0; n < 256; n++)
+			for (int t = 1; t < 8; t++)
+				TABLES[t][n] = (TABLES[t - 1][n] >>> 8) ^ TABLES[0][TABLES[t - 1][n] & 0xff];
+	}
+
+	private int crc = 0xFFFFFFFF;
+
+	/**
+	 * Adds the remaining bytes of the buffer to the checksum without changing the buffer's position.
+	 */
+	public void update(ByteBuffer buffer) {
+		if (buffer.hasArray()) {
+			this.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			return;
+		}
+		byte[] bytes = new byte[Math.min(buffer.remaining(), BUFFER_SIZE)];
+		for (ByteBuffer remaining = buffer.duplicate(); remaining.hasRemaining(); ) {
+			int length = Math.min(remaining.remaining(), bytes.length);
+			remaining.get(bytes, 0, length);
+			this.update(bytes, 0, length);
+		}
+	}
+
+	public void update(byte[] bytes, int offset, int length) {
+		int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+		int[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+		int crc = this.crc;
+		int i = offset, end = offset + length;
+
+		for (; i <= end - 8; i += 8)
+			crc = t7[(crc ^ bytes[i]) & 0xff] ^ t6[((crc >>> 8) ^ bytes[i + 1]) & 0xff]
+					^ t5[((crc >>> 16) ^ bytes[i + 2]) & 0xff] ^ t4[((crc >>> 24) ^ bytes[i + 3]) & 0xff]
+					^ t3[bytes[i + 4] & 0xff] ^ t2[bytes[i + 5] & 0xff] ^ t1[bytes[i + 6] & 0xff] ^ t0[bytes[i + 7] & 0xff];
+		for (; i < end; i++)
+			crc = (crc >>> 8) ^ t0[(crc ^ bytes[i]) & 0xff];
+
+		this.crc = crc;
+	}
+
+	public int getValue() {
+		return ~this.crc;
+	}
+
+	public static int checksum(ByteString bytes) {
+		Crc32c crc32c = new Crc32c();
+		crc32c.update(bytes.asByteBuffer());
+		return crc32c.getValue();
+	}
+}
@@ -1,8 +1,24 @@
 package de.hpi.ddm.actors;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.After;
 import org.junit.Before;
@@ -12,13 +28,20 @@ import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 
 import akka.actor.AbstractLoggingActor;
+import akka.actor.ActorPath;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
+import akka.serialization.Serializers;
 import akka.testkit.javadsl.TestKit;
+import akka.util.ByteString;
 import de.hpi.ddm.MasterSystem;
 import de.hpi.ddm.configuration.Configuration;
 import de.hpi.ddm.configuration.ConfigurationSingleton;
+import de.hpi.ddm.structures.Crc32c;
+import scala.concurrent.duration.FiniteDuration;
 
 public class LargeMessageProxyTest {
 
@@ -41,23 +64,72 @@ public class LargeMessageProxyTest {
 		public Receive createReceive() {
 			return receiveBuilder()
 					.match(LargeMessageProxy.LargeMessage.class, message -> this.largeMessageProxy.tell(message, this.self()))
+					.match(LargeMessageProxy.BroadcastLargeMessage.class, message -> this.largeMessageProxy.tell(message, this.self()))
 					.match(Object.class, message -> this.parent.tell(message, this.self()))
 					.build();
 		}
 	}
 
+	// A receiver whose proxy forwards everything to a probe, so that tests can play the receiving proxy
+	static class ReceiverStub extends AbstractLoggingActor {
+		
+		public static Props props(ActorRef proxy) {
+			return Props.create(ReceiverStub.class, () -> new ReceiverStub(proxy));
+		}
+		
+		public ReceiverStub(ActorRef proxy) {
+			this.context().actorOf(Props.create(Forwarder.class, () -> new Forwarder(proxy)), LargeMessageProxy.DEFAULT_NAME);
+		}
+		
+		@Override
+		public Receive createReceive() {
+			return receiveBuilder().build();
+		}
+	}
+	
+	static class Forwarder extends AbstractLoggingActor {
+		
+		public Forwarder(ActorRef target) {
+			this.target = target;
+		}
+		
+		ActorRef target;
+		
+		@Override
+		public Receive createReceive() {
+			return receiveBuilder()
+					.matchAny(message -> this.target.forward(message, this.context()))
+					.build();
+		}
+	}
+	
 	@Before
 	public void setUp() throws Exception {
+		system = createSystem(ConfigurationSingleton.get().getPort());
+	}
+
+	static ActorSystem createSystem(int port) {
+		return createSystem(port, ConfigFactory.empty());
+	}
+
+	static ActorSystem createSystem(int port, Config overrides) {
 		final Configuration c = ConfigurationSingleton.get();
 		
 		final Config config = ConfigFactory.parseString(
 				"akka.remote.artery.canonical.hostname = \"" + c.getHost() + "\"\n" +
-				"akka.remote.artery.canonical.port = " + c.getPort() + "\n" +
+				"akka.remote.artery.canonical.port = " + port + "\n" +
 				"akka.cluster.roles = [" + MasterSystem.MASTER_ROLE + "]\n" +
 				"akka.cluster.seed-nodes = [\"akka://" + c.getActorSystemName() + "@" + c.getMasterHost() + ":" + c.getMasterPort() + "\"]")
+			.withFallback(overrides)
 			.withFallback(ConfigFactory.load("application"));
 		
-		system = ActorSystem.create(c.getActorSystemName(), config);
+		return ActorSystem.create(c.getActorSystemName(), config);
+	}
+
+	static byte[] payload(int seed, int size) {
+		byte[] payload = new byte[size];
+		new Random(seed).nextBytes(payload);
+		return payload;
 	}
 
 	@After
@@ -115,4 +187,569 @@ public class LargeMessageProxyTest {
 			}
 		};
 	}
+	
+	@Test
+	public void testConcurrentRemoteTransfers() {
+		final int numSenders = 4;
+		final int numReceivers = 4;
+		final int payloadSize = 3 * LargeMessageProxy.DEFAULT_BATCH_SIZE + 1234;
+		
+		ActorSystem remoteSystem = createSystem(Configuration.DEFAULT_SLAVE_PORT);
+		try {
+			new TestKit(system) {
+				{
+					List<ActorRef> senders = new ArrayList<>();
+					for (int i = 0; i < numSenders; i++)
+						senders.add(system.actorOf(TestActor.props(this.getRef()), "sender" + i));
+					
+					// The receivers live in another actor system, so that all transfers go through the remote path
+					List<ActorRef> receivers = new ArrayList<>();
+					for (int i = 0; i < numReceivers; i++) {
+						ActorRef receiver = remoteSystem.actorOf(TestActor.props(this.getRef()), "receiver" + i);
+						String remotePath = receiver.path().toStringWithAddress(remoteSystem.provider().getDefaultAddress());
+						receivers.add(system.actorSelection(remotePath).resolveOne(Duration.ofSeconds(5)).toCompletableFuture().join());
+					}
+					
+					// Every sender sends a different payload to every receiver at the same time
+					for (int s = 0; s < numSenders; s++)
+						for (int r = 0; r < numReceivers; r++)
+							senders.get(s).tell(new LargeMessageProxy.LargeMessage<>(payload(s * numReceivers + r, payloadSize), receivers.get(r)), this.getRef());
+					
+					// The actor references are resolved in different actor systems, so senders and receivers are identified by name
+					List<String> senderNames = senders.stream().map(ActorRef::path).map(ActorPath::name).collect(Collectors.toList());
+					List<String> receiverNames = receivers.stream().map(ActorRef::path).map(ActorPath::name).collect(Collectors.toList());
+					
+					Set<Integer> seeds = new HashSet<>();
+					for (Object message : this.receiveN(numSenders * numReceivers, Duration.ofSeconds(20))) {
+						LargeMessageProxy.AssembledLargeMessage assembled = (LargeMessageProxy.AssembledLargeMessage) message;
+						int s = senderNames.indexOf(assembled.getSender().path().name());
+						int r = receiverNames.indexOf(assembled.getReceiver().path().name());
+						assertTrue(s >= 0 && r >= 0);
+						
+						int seed = s * numReceivers + r;
+						assertArrayEquals(payload(seed, payloadSize), (byte[]) assembled.getMessage());
+						assertTrue(seeds.add(seed));
+					}
+					expectNoMessage(Duration.ofMillis(500));
+				}
+			};
+		} finally {
+			TestKit.shutdownActorSystem(remoteSystem);
+		}
+	}
+	
+	@Test
+	public void testMoreConcurrentTransfersThanTransferThreads() {
+		final int numThreads = 4;
+		final int numTransfers = 2 * numThreads;
+		// Larger than a window, so that batches still arrive after the transfers have taken all transfer threads
+		final int payloadSize = 2 * LargeMessageProxy.DEFAULT_WINDOW * LargeMessageProxy.DEFAULT_BATCH_SIZE + 4321;
+		
+		// Every transfer blocks a transfer thread on each side until its last batch, so the threads run out before the transfers do
+		Config fewThreads = ConfigFactory.parseString(
+				LargeMessageProxy.DISPATCHER_NAME + ".thread-pool-executor.fixed-pool-size = " + numThreads + "\n" +
+				LargeMessageProxy.SERIALIZATION_DISPATCHER_NAME + ".thread-pool-executor.fixed-pool-size = " + numThreads);
+		TestKit.shutdownActorSystem(system);
+		system = createSystem(ConfigurationSingleton.get().getPort(), fewThreads);
+		ActorSystem remoteSystem = createSystem(Configuration.DEFAULT_SLAVE_PORT, fewThreads);
+		try {
+			new TestKit(system) {
+				{
+					ActorRef sender = system.actorOf(TestActor.props(this.getRef()), "sender");
+					ActorRef receiver = remoteSystem.actorOf(TestActor.props(this.getRef()), "receiver");
+					String remotePath = receiver.path().toStringWithAddress(remoteSystem.provider().getDefaultAddress());
+					ActorRef remoteReceiver = system.actorSelection(remotePath).resolveOne(Duration.ofSeconds(5)).toCompletableFuture().join();
+					
+					List<byte[]> payloads = new ArrayList<>();
+					for (int i = 0; i < numTransfers; i++) {
+						payloads.add(payload(i, payloadSize));
+						sender.tell(new LargeMessageProxy.LargeMessage<>(payloads.get(i), remoteReceiver), this.getRef());
+					}
+					
+					Set<Integer> seeds = new HashSet<>();
+					for (Object message : this.receiveN(numTransfers, Duration.ofSeconds(30))) {
+						byte[] received = (byte[]) ((LargeMessageProxy.AssembledLargeMessage) message).getMessage();
+						for (int i = 0; i < numTransfers; i++)
+							if (Arrays.equals(payloads.get(i), received))
+								assertTrue(seeds.add(i));
+					}
+					assertEquals(numTransfers, seeds.size());
+					expectNoMessage(Duration.ofMillis(500));
+				}
+			};
+		} finally {
+			TestKit.shutdownActorSystem(remoteSystem);
+		}
+	}
+	
+	@Test
+	public void testRepeatedRemoteTransfers() {
+		final int numTransfers = 4;
+		final int payloadSize = 2 * LargeMessageProxy.DEFAULT_WINDOW * LargeMessageProxy.DEFAULT_BATCH_SIZE + 4321;
+		
+		ActorSystem remoteSystem = createSystem(Configuration.DEFAULT_SLAVE_PORT);
+		try {
+			new TestKit(system) {
+				{
+					ActorRef sender = system.actorOf(TestActor.props(this.getRef()), "sender");
+					ActorRef receiver = remoteSystem.actorOf(TestActor.props(this.getRef()), "receiver");
+					String remotePath = receiver.path().toStringWithAddress(remoteSystem.provider().getDefaultAddress());
+					ActorRef remoteReceiver = system.actorSelection(remotePath).resolveOne(Duration.ofSeconds(5)).toCompletableFuture().join();
+					
+					// Once the receiver's proxy is known, the following transfers go straight to it with batches of adapted size
+					for (int i = 0; i < numTransfers; i++) {
+						sender.tell(new LargeMessageProxy.LargeMessage<>(payload(i, payloadSize), remoteReceiver), this.getRef());
+						LargeMessageProxy.AssembledLargeMessage assembled = this.expectMsgClass(Duration.ofSeconds(10), LargeMessageProxy.AssembledLargeMessage.class);
+						assertArrayEquals(payload(i, payloadSize), (byte[]) assembled.getMessage());
+					}
+					expectNoMessage(Duration.ofMillis(500));
+				}
+			};
+		} finally {
+			TestKit.shutdownActorSystem(remoteSystem);
+		}
+	}
+	
+	@Test
+	public void testSendersStopAtTheEndOfTheirWindow() {
+		final int payloadSize = 3 * LargeMessageProxy.DEFAULT_WINDOW * LargeMessageProxy.DEFAULT_BATCH_SIZE;
+
+		ActorSystem remoteSystem = createSystem(Configuration.DEFAULT_SLAVE_PORT);
+		try {
+			new TestKit(system) {
+				{
+					ActorRef sender = system.actorOf(TestActor.props(this.getRef()), "sender");
+					TestKit receiverProxy = new TestKit(remoteSystem);
+					ActorRef receiver = remoteSystem.actorOf(ReceiverStub.props(receiverProxy.getRef()), "receiver");
+					String remotePath = receiver.path().toStringWithAddress(remoteSystem.provider().getDefaultAddress());
+					ActorRef remoteReceiver = system.actorSelection(remotePath).resolveOne(Duration.ofSeconds(5)).toCompletableFuture().join();
+
+					// The stub withholds all credits, so the sender may send only the window that it holds from the start
+					sender.tell(new LargeMessageProxy.LargeMessage<>(payload(41, payloadSize), remoteReceiver), this.getRef());
+					long transferID = fish(receiverProxy, LargeMessageProxy.PreLargeMessage.class).getTransferID();
+					int sequenceNumber = 0;
+					for (; sequenceNumber < LargeMessageProxy.DEFAULT_WINDOW; sequenceNumber++)
+						assertEquals(sequenceNumber, fish(receiverProxy, LargeMessageProxy.BytesBatchMessage.class).getSequenceNumber());
+					receiverProxy.expectNoMessage(Duration.ofMillis(500));
+
+					// Every cumulative grant opens the window by exactly the batches that it reports as consumed
+					ActorRef senderProxy = receiverProxy.getLastSender();
+					for (int consumed = LargeMessageProxy.CREDIT_BATCH; consumed <= 2 * LargeMessageProxy.CREDIT_BATCH; consumed += LargeMessageProxy.CREDIT_BATCH) {
+						senderProxy.tell(new LargeMessageProxy.GrantCreditsMessage(transferID, consumed), receiverProxy.getRef());
+						for (; sequenceNumber < consumed + LargeMessageProxy.DEFAULT_WINDOW; sequenceNumber++)
+							assertEquals(sequenceNumber, fish(receiverProxy, LargeMessageProxy.BytesBatchMessage.class).getSequenceNumber());
+						receiverProxy.expectNoMessage(Duration.ofMillis(500));
+					}
+				}
+			};
+		} finally {
+			TestKit.shutdownActorSystem(remoteSystem);
+		}
+	}
+
+	@Test
+	public void testBatchSizesGrowTowardsTheBandwidthDelayProduct() {
+		final long roundTripNanos = 1_000_000;
+		final double linkBytesPerNano = 20;
+		final int maxBatchSize = 16 * 1024 * 1024;
+		final int targetBatchSize = (int) (linkBytesPerNano * roundTripNanos / LargeMessageProxy.CREDIT_BATCH);
+
+		// Unmeasured links get the default batch size, but never more than fits into a frame
+		LargeMessageProxy.Link link = new LargeMessageProxy.Link();
+		assertEquals(LargeMessageProxy.DEFAULT_BATCH_SIZE, link.batchSize(maxBatchSize));
+		assertEquals(1000, link.batchSize(1000));
+
+		// While the window limits the throughput, a full window per round trip doubles the first estimate; later round trips
+		// that queue behind earlier batches do not shrink it
+		link.sampleRoundTrip(roundTripNanos);
+		link.sampleRoundTrip(3 * roundTripNanos);
+		int batchSize = link.batchSize(maxBatchSize);
+		for (int i = 0; i < 100; i++) {
+			double bytesPerNano = Math.min(linkBytesPerNano, LargeMessageProxy.DEFAULT_WINDOW * (double) batchSize / roundTripNanos);
+			link.sampleThroughput((long) (bytesPerNano * roundTripNanos), roundTripNanos);
+			int nextBatchSize = link.batchSize(maxBatchSize);
+			assertTrue(nextBatchSize >= batchSize);
+			if (i == 0)
+				assertEquals(2 * LargeMessageProxy.DEFAULT_BATCH_SIZE, nextBatchSize);
+			batchSize = nextBatchSize;
+		}
+
+		// Once the link limits the throughput, the batches of one credit grant cover its bandwidth-delay product
+		assertEquals(targetBatchSize, batchSize, targetBatchSize / 100);
+		assertEquals(targetBatchSize / 2, link.batchSize(targetBatchSize / 2));
+
+		// Slow links still get batches of the minimum size
+		LargeMessageProxy.Link slowLink = new LargeMessageProxy.Link();
+		slowLink.sampleRoundTrip(roundTripNanos);
+		slowLink.sampleThroughput(1, roundTripNanos);
+		assertEquals(LargeMessageProxy.MIN_BATCH_SIZE, slowLink.batchSize(maxBatchSize));
+	}
+
+	@Test
+	public void testCompressedRemoteTransfers() {
+		final int payloadSize = 2 * LargeMessageProxy.DEFAULT_WINDOW * LargeMessageProxy.DEFAULT_BATCH_SIZE + 4321;
+		
+		// A sparse payload that compresses well and a random one that does not
+		byte[] sparsePayload = new byte[payloadSize];
+		for (int i = 0; i < payloadSize; i += 1000)
+			sparsePayload[i] = (byte) i;
+		byte[] randomPayload = payload(42, payloadSize);
+		
+		ConfigurationSingleton.get().setCompressBatches(true);
+		ActorSystem remoteSystem = createSystem(Configuration.DEFAULT_SLAVE_PORT);
+		try {
+			new TestKit(system) {
+				{
+					ActorRef sender = system.actorOf(TestActor.props(this.getRef()), "sender");
+					ActorRef receiver = remoteSystem.actorOf(TestActor.props(this.getRef()), "receiver");
+					String remotePath = receiver.path().toStringWithAddress(remoteSystem.provider().getDefaultAddress());
+					ActorRef remoteReceiver = system.actorSelection(remotePath).resolveOne(Duration.ofSeconds(5)).toCompletableFuture().join();
+					
+					for (byte[] payload : new byte[][] { sparsePayload, randomPayload }) {
+						sender.tell(new LargeMessageProxy.LargeMessage<>(payload, remoteReceiver), this.getRef());
+						LargeMessageProxy.AssembledLargeMessage assembled = this.expectMsgClass(Duration.ofSeconds(10), LargeMessageProxy.AssembledLargeMessage.class);
+						assertArrayEquals(payload, (byte[]) assembled.getMessage());
+					}
+					expectNoMessage(Duration.ofMillis(500));
+				}
+			};
+		} finally {
+			ConfigurationSingleton.get().setCompressBatches(false);
+			TestKit.shutdownActorSystem(remoteSystem);
+		}
+	}
+	
+	@Test
+	public void testSharedMemoryTransfers() throws IOException {
+		final int numTransfers = 4;
+		final int payloadSize = 3 * LargeMessageProxy.DEFAULT_BATCH_SIZE + 1234;
+		
+		// Both actor systems run on this host, so the payloads are passed through shared files
+		ConfigurationSingleton.get().setSharedMemory(true);
+		ActorSystem remoteSystem = createSystem(Configuration.DEFAULT_SLAVE_PORT);
+		try {
+			new TestKit(system) {
+				{
+					ActorRef sender = system.actorOf(TestActor.props(this.getRef()), "sender");
+					ActorRef receiver = remoteSystem.actorOf(TestActor.props(this.getRef()), "receiver");
+					ActorRef receiverProxy = awaitAssert(Duration.ofSeconds(5), () -> remoteSystem.actorSelection(receiver.path().child(LargeMessageProxy.DEFAULT_NAME))
+							.resolveOne(Duration.ofSeconds(1)).toCompletableFuture().join());
+					
+					// A stub receives the messages first, so that the transfers cannot fall back to TCP unnoticed
+					TestKit stubProxy = new TestKit(remoteSystem);
+					ActorRef stub = remoteSystem.actorOf(ReceiverStub.props(stubProxy.getRef()), "stub");
+					String remotePath = stub.path().toStringWithAddress(remoteSystem.provider().getDefaultAddress());
+					ActorRef remoteStub = system.actorSelection(remotePath).resolveOne(Duration.ofSeconds(5)).toCompletableFuture().join();
+					
+					for (int i = 0; i < numTransfers; i++)
+						sender.tell(new LargeMessageProxy.LargeMessage<>(payload(i, payloadSize), remoteStub), this.getRef());
+					
+					// Every message arrives as a shared file, which the receiver's real proxy then reads
+					for (int i = 0; i < numTransfers; i++) {
+						LargeMessageProxy.SharedLargeMessage shared = fish(stubProxy, LargeMessageProxy.SharedLargeMessage.class);
+						Path file = Paths.get(shared.getPath());
+						assertEquals(LargeMessageProxy.SHARED_MEMORY_DIRECTORY, file.getParent());
+						assertEquals(shared.getLength(), Files.size(file));
+						receiverProxy.tell(new LargeMessageProxy.SharedLargeMessage(shared.getTransferID(), shared.getSender(), receiver,
+								shared.getSerializerID(), shared.getManifest(), shared.getPath(), shared.getLength()), stubProxy.getLastSender());
+					}
+					
+					Set<Integer> seeds = new HashSet<>();
+					for (Object message : this.receiveN(numTransfers, Duration.ofSeconds(10))) {
+						byte[] payload = (byte[]) ((LargeMessageProxy.AssembledLargeMessage) message).getMessage();
+						for (int i = 0; i < numTransfers; i++)
+							if (Arrays.equals(payload(i, payloadSize), payload))
+								assertTrue(seeds.add(i));
+					}
+					assertEquals(numTransfers, seeds.size());
+					expectNoMessage(Duration.ofMillis(500));
+				}
+			};
+		} finally {
+			ConfigurationSingleton.get().setSharedMemory(false);
+			TestKit.shutdownActorSystem(remoteSystem);
+		}
+		
+		// The receiver deletes every shared file once it has mapped it
+		assertEquals(0, sharedFiles());
+	}
+	
+	@Test
+	public void testSharedFilesOfSilentReceiversAreDeleted() {
+		ConfigurationSingleton.get().setSharedMemory(true);
+		ActorSystem remoteSystem = createSystem(Configuration.DEFAULT_SLAVE_PORT);
+		try {
+			new TestKit(system) {
+				{
+					// The receiver has no proxy, so nobody reads the shared file or answers the probes of its sender
+					ActorRef sender = system.actorOf(TestActor.props(this.getRef()), "sender");
+					TestKit receiver = new TestKit(remoteSystem);
+					String remotePath = receiver.getRef().path().toStringWithAddress(remoteSystem.provider().getDefaultAddress());
+					ActorRef remoteReceiver = system.actorSelection(remotePath).resolveOne(Duration.ofSeconds(5)).toCompletableFuture().join();
+					
+					sender.tell(new LargeMessageProxy.LargeMessage<>(payload(0, LargeMessageProxy.DEFAULT_BATCH_SIZE), remoteReceiver), this.getRef());
+					awaitAssert(Duration.ofSeconds(5), () -> {
+						assertEquals(1, sharedFiles());
+						return null;
+					});
+					
+					// Every probe waits for up to one and a half stall timeouts
+					Duration stallTimeout = Duration.ofMillis(LargeMessageProxy.STALL_TIMEOUT_MILLIS);
+					awaitAssert(stallTimeout.multipliedBy(3 * (LargeMessageProxy.MAX_PROBES + 2) / 2), () -> {
+						assertEquals(0, sharedFiles());
+						return null;
+					});
+				}
+			};
+		} finally {
+			ConfigurationSingleton.get().setSharedMemory(false);
+			TestKit.shutdownActorSystem(remoteSystem);
+		}
+	}
+	
+	static long sharedFiles() {
+		try (Stream<Path> files = Files.list(LargeMessageProxy.SHARED_MEMORY_DIRECTORY)) {
+			return files.filter(file -> file.getFileName().toString().startsWith(LargeMessageProxy.SHARED_FILE_PREFIX)).count();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	@Test
+	public void testForeignSharedFilesAreRejected() throws IOException {
+		// Files outside the shared memory directory must survive even if their names look like shared files
+		Path directory = Files.createTempDirectory("foreign");
+		Path file = Files.createTempFile(directory, LargeMessageProxy.SHARED_FILE_PREFIX, ".bin");
+		try {
+			new TestKit(system) {
+				{
+					ActorRef receiver = system.actorOf(TestActor.props(this.getRef()), "receiver");
+					ActorRef receiverProxy = awaitAssert(Duration.ofSeconds(5), () -> system.actorSelection(receiver.path().child(LargeMessageProxy.DEFAULT_NAME))
+							.resolveOne(Duration.ofSeconds(1)).toCompletableFuture().join());
+					
+					String traversal = LargeMessageProxy.SHARED_MEMORY_DIRECTORY.resolve("..").resolve(directory.toAbsolutePath().toString().substring(1)).resolve(file.getFileName()).toString();
+					String[] paths = { file.toString(), traversal };
+					for (int i = 0; i < paths.length; i++) {
+						receiverProxy.tell(new LargeMessageProxy.SharedLargeMessage(i, this.getRef(), receiver, 0, "", paths[i], 0), this.getRef());
+						assertEquals(new LargeMessageProxy.RejectLargeMessage(i), fish(this, LargeMessageProxy.RejectLargeMessage.class));
+					}
+					assertTrue(Files.exists(file));
+				}
+			};
+		} finally {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(directory);
+		}
+	}
+	
+	@Test
+	public void testBroadcast() {
+		final int numRemoteSystems = LargeMessageProxy.RELAY_FANOUT + 1;
+		final int receiversPerSystem = 2;
+		final int payloadSize = 2 * LargeMessageProxy.DEFAULT_WINDOW * LargeMessageProxy.DEFAULT_BATCH_SIZE + 4321;
+		final byte[] payload = payload(7, payloadSize);
+		
+		// More systems than the fan-out, so that some relay forwards the batches to another system
+		List<ActorSystem> remoteSystems = new ArrayList<>();
+		for (int i = 0; i < numRemoteSystems; i++)
+			remoteSystems.add(createSystem(Configuration.DEFAULT_SLAVE_PORT + i));
+		try {
+			new TestKit(system) {
+				{
+					ActorRef sender = system.actorOf(TestActor.props(this.getRef()), "sender");
+					
+					// One receiver in the sender's system and several in every remote system
+					List<ActorRef> receivers = new ArrayList<>();
+					receivers.add(system.actorOf(TestActor.props(this.getRef()), "receiver"));
+					for (ActorSystem remoteSystem : remoteSystems) {
+						for (int i = 0; i < receiversPerSystem; i++) {
+							ActorRef receiver = remoteSystem.actorOf(TestActor.props(this.getRef()), "receiver" + i);
+							String remotePath = receiver.path().toStringWithAddress(remoteSystem.provider().getDefaultAddress());
+							receivers.add(system.actorSelection(remotePath).resolveOne(Duration.ofSeconds(5)).toCompletableFuture().join());
+						}
+					}
+					
+					// The relay tree and the direct transfers must both deliver the payload to every receiver exactly once
+					for (boolean relay : new boolean[] { true, false }) {
+						sender.tell(new LargeMessageProxy.BroadcastLargeMessage<>(payload, receivers, relay), this.getRef());
+						
+						for (Object message : this.receiveN(receivers.size(), Duration.ofSeconds(20))) {
+							byte[] received = message instanceof LargeMessageProxy.AssembledLargeMessage
+									? (byte[]) ((LargeMessageProxy.AssembledLargeMessage) message).getMessage()
+									: (byte[]) message;
+							assertArrayEquals(payload, received);
+						}
+						expectNoMessage(Duration.ofMillis(500));
+					}
+				}
+			};
+		} finally {
+			for (ActorSystem remoteSystem : remoteSystems)
+				TestKit.shutdownActorSystem(remoteSystem);
+		}
+	}
+
+	@Test
+	public void testBroadcastsOfFailedRelaysFallBack() {
+		final byte[] payload = payload(49, 3 * LargeMessageProxy.DEFAULT_BATCH_SIZE + 1234);
+
+		// Three systems make two relay groups, the second of which starts with a stub that rejects the broadcast
+		List<ActorSystem> remoteSystems = new ArrayList<>();
+		for (int i = 0; i < LargeMessageProxy.RELAY_FANOUT + 1; i++)
+			remoteSystems.add(createSystem(Configuration.DEFAULT_SLAVE_PORT + i));
+		try {
+			new TestKit(system) {
+				{
+					ActorRef sender = system.actorOf(TestActor.props(this.getRef()), "sender");
+					TestKit relayProxy = new TestKit(remoteSystems.get(1));
+					List<ActorRef> receivers = new ArrayList<>();
+					for (int i = 0; i < remoteSystems.size(); i++) {
+						ActorSystem remoteSystem = remoteSystems.get(i);
+						ActorRef receiver = remoteSystem.actorOf(i == 1 ? ReceiverStub.props(relayProxy.getRef()) : TestActor.props(this.getRef()), "receiver");
+						String remotePath = receiver.path().toStringWithAddress(remoteSystem.provider().getDefaultAddress());
+						receivers.add(system.actorSelection(remotePath).resolveOne(Duration.ofSeconds(5)).toCompletableFuture().join());
+					}
+
+					sender.tell(new LargeMessageProxy.BroadcastLargeMessage<>(payload, receivers, true), this.getRef());
+					LargeMessageProxy.PreLargeMessage relayed = fish(relayProxy, LargeMessageProxy.PreLargeMessage.class);
+					assertEquals(Arrays.asList(receivers.get(2)), relayed.getRelayReceivers());
+					relayProxy.getLastSender().tell(new LargeMessageProxy.RejectLargeMessage(relayed.getTransferID()), relayProxy.getRef());
+
+					// The rest of the rejected group gets the message point-to-point, and the stub gets a plain transfer once more
+					for (Object message : this.receiveN(2, Duration.ofSeconds(20)))
+						assertArrayEquals(payload, (byte[]) ((LargeMessageProxy.AssembledLargeMessage) message).getMessage());
+					LargeMessageProxy.PreLargeMessage retried = fish(relayProxy, LargeMessageProxy.PreLargeMessage.class);
+					assertEquals(receivers.get(1).path().toStringWithoutAddress(), retried.getReceiver().path().toStringWithoutAddress());
+					assertTrue(retried.getRelayReceivers().isEmpty());
+					expectNoMessage(Duration.ofMillis(500));
+				}
+			};
+		} finally {
+			for (ActorSystem remoteSystem : remoteSystems)
+				TestKit.shutdownActorSystem(remoteSystem);
+		}
+	}
+
+	@Test
+	public void testSelectiveResending() {
+		new TestKit(system) {
+			{
+				ActorRef receiver = system.actorOf(TestActor.props(this.getRef()), "receiver");
+				ActorRef receiverProxy = awaitAssert(Duration.ofSeconds(5), () -> system.actorSelection(receiver.path().child(LargeMessageProxy.DEFAULT_NAME))
+						.resolveOne(Duration.ofSeconds(1)).toCompletableFuture().join());
+				
+				// A probe plays the sending proxy, so that it can lose and corrupt batches on purpose
+				TestKit senderProxy = new TestKit(system);
+				byte[] payload = payload(50, 5 * 1000);
+				Serializer serializer = SerializationExtension.get(system).findSerializerFor(payload);
+				ByteString bytes = ByteString.fromArray(serializer.toBinary(payload));
+				List<LargeMessageProxy.BytesBatchMessage> batches = new ArrayList<>();
+				for (int i = 0; i < 5; i++) {
+					ByteString batch = bytes.slice(i * 1000, (i + 1) * 1000);
+					batches.add(new LargeMessageProxy.BytesBatchMessage(1, i, batch, 0, Crc32c.checksum(batch)));
+				}
+				
+				receiverProxy.tell(new LargeMessageProxy.PreLargeMessage(1, this.getRef(), receiver, serializer.identifier(),
+						Serializers.manifestFor(serializer, payload), new ArrayList<>()), senderProxy.getRef());
+				
+				// Batch 1 gets lost, batch 3 gets corrupted and batch 4 gets lost at the end of the transfer
+				receiverProxy.tell(batches.get(0), senderProxy.getRef());
+				receiverProxy.tell(batches.get(2), senderProxy.getRef());
+				assertEquals(new LargeMessageProxy.ResendBatchesMessage(1, 1, 2), fish(senderProxy, LargeMessageProxy.ResendBatchesMessage.class));
+				
+				LargeMessageProxy.BytesBatchMessage corrupt = batches.get(3);
+				receiverProxy.tell(new LargeMessageProxy.BytesBatchMessage(1, 3, corrupt.getBytes(), 0, corrupt.getChecksum() + 1), senderProxy.getRef());
+				assertEquals(new LargeMessageProxy.ResendBatchesMessage(1, 3, 4), fish(senderProxy, LargeMessageProxy.ResendBatchesMessage.class));
+				
+				receiverProxy.tell(new LargeMessageProxy.PostLargeMessage(1, 5), senderProxy.getRef());
+				assertEquals(new LargeMessageProxy.ResendBatchesMessage(1, 4, 5), fish(senderProxy, LargeMessageProxy.ResendBatchesMessage.class));
+				
+				// The resent batches complete the transfer without the batches that have been verified already
+				for (int i : new int[] { 1, 3, 4 })
+					receiverProxy.tell(batches.get(i), senderProxy.getRef());
+				LargeMessageProxy.AssembledLargeMessage message = this.expectMsgClass(Duration.ofSeconds(5), LargeMessageProxy.AssembledLargeMessage.class);
+				assertArrayEquals(payload, (byte[]) message.getMessage());
+				assertEquals(new LargeMessageProxy.AcceptLargeMessage(1), fish(senderProxy, LargeMessageProxy.AcceptLargeMessage.class));
+				
+				// Probes of delivered transfers are answered even if the acceptance got lost, probes of unknown ones are rejected
+				receiverProxy.tell(new LargeMessageProxy.ProbeLargeMessage(1, 5, true), senderProxy.getRef());
+				assertEquals(new LargeMessageProxy.AcceptLargeMessage(1), fish(senderProxy, LargeMessageProxy.AcceptLargeMessage.class));
+				receiverProxy.tell(new LargeMessageProxy.ProbeLargeMessage(2, 5, true), senderProxy.getRef());
+				assertEquals(new LargeMessageProxy.RejectLargeMessage(2), fish(senderProxy, LargeMessageProxy.RejectLargeMessage.class));
+				
+				expectNoMessage(Duration.ofMillis(500));
+			}
+		};
+	}
+	
+	@Test
+	public void testTransfersOfTerminatedSendersAreAborted() {
+		// A single transfer thread, which the unfinished transfer of the dead sender would block for good
+		TestKit.shutdownActorSystem(system);
+		system = createSystem(ConfigurationSingleton.get().getPort(),
+				ConfigFactory.parseString(LargeMessageProxy.DISPATCHER_NAME + ".thread-pool-executor.fixed-pool-size = 1"));
+		new TestKit(system) {
+			{
+				ActorRef receiver = system.actorOf(TestActor.props(this.getRef()), "receiver");
+				ActorRef receiverProxy = awaitAssert(Duration.ofSeconds(5), () -> system.actorSelection(receiver.path().child(LargeMessageProxy.DEFAULT_NAME))
+						.resolveOne(Duration.ofSeconds(1)).toCompletableFuture().join());
+
+				byte[] payload = payload(44, 1000);
+				Serializer serializer = SerializationExtension.get(system).findSerializerFor(payload);
+				ByteString bytes = ByteString.fromArray(serializer.toBinary(payload));
+				LargeMessageProxy.PreLargeMessage pre = new LargeMessageProxy.PreLargeMessage(1, this.getRef(), receiver,
+						serializer.identifier(), Serializers.manifestFor(serializer, payload), new ArrayList<>());
+
+				// The first sender dies in the middle of its transfer
+				TestKit deadSenderProxy = new TestKit(system);
+				receiverProxy.tell(pre, deadSenderProxy.getRef());
+				receiverProxy.tell(new LargeMessageProxy.BytesBatchMessage(1, 0, bytes.slice(0, 500), 0, Crc32c.checksum(bytes.slice(0, 500))), deadSenderProxy.getRef());
+				fish(deadSenderProxy, LargeMessageProxy.GrantCreditsMessage.class);
+				system.stop(deadSenderProxy.getRef());
+
+				// The next transfer gets the transfer thread back
+				TestKit senderProxy = new TestKit(system);
+				receiverProxy.tell(pre, senderProxy.getRef());
+				receiverProxy.tell(new LargeMessageProxy.BytesBatchMessage(1, 0, bytes, 0, Crc32c.checksum(bytes)), senderProxy.getRef());
+				receiverProxy.tell(new LargeMessageProxy.PostLargeMessage(1, 1), senderProxy.getRef());
+				LargeMessageProxy.AssembledLargeMessage message = this.expectMsgClass(Duration.ofSeconds(5), LargeMessageProxy.AssembledLargeMessage.class);
+				assertArrayEquals(payload, (byte[]) message.getMessage());
+			}
+		};
+	}
+
+	@Test
+	public void testRejectedTransfersStartOver() {
+		ActorSystem remoteSystem = createSystem(Configuration.DEFAULT_SLAVE_PORT);
+		try {
+			new TestKit(system) {
+				{
+					ActorRef sender = system.actorOf(TestActor.props(this.getRef()), "sender");
+					TestKit receiverProxy = new TestKit(remoteSystem);
+					ActorRef receiver = remoteSystem.actorOf(ReceiverStub.props(receiverProxy.getRef()), "receiver");
+					String remotePath = receiver.path().toStringWithAddress(remoteSystem.provider().getDefaultAddress());
+					ActorRef remoteReceiver = system.actorSelection(remotePath).resolveOne(Duration.ofSeconds(5)).toCompletableFuture().join();
+					
+					// The stub rejects every transfer like a restarted proxy that answers a probe of a transfer it does not know
+					sender.tell(new LargeMessageProxy.LargeMessage<>(payload(0, 1000), remoteReceiver), this.getRef());
+					Set<Long> transferIDs = new HashSet<>();
+					for (int i = 0; i <= LargeMessageProxy.MAX_RESTARTS; i++) {
+						long transferID = fish(receiverProxy, LargeMessageProxy.PreLargeMessage.class).getTransferID();
+						assertTrue(transferIDs.add(transferID));
+						fish(receiverProxy, LargeMessageProxy.PostLargeMessage.class);
+						receiverProxy.getLastSender().tell(new LargeMessageProxy.RejectLargeMessage(transferID), receiverProxy.getRef());
+					}
+					
+					// A transfer that its receivers keep rejecting is given up eventually
+					receiverProxy.expectNoMessage(Duration.ofSeconds(1));
+				}
+			};
+		} finally {
+			TestKit.shutdownActorSystem(remoteSystem);
+		}
+	}
+	
+	static <T> T fish(TestKit probe, Class<T> type) {
+		return type.cast(probe.fishForMessage(FiniteDuration.create(5, TimeUnit.SECONDS), type.getSimpleName(), type::isInstance));
+	}
 }
@@ -0,0 +1,56 @@
+package de.hpi.ddm.structures;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.zip.ZipException;
+
+import org.junit.Test;
+
+import akka.util.ByteString;
+
+public class BatchCompressorTest {
+
+	static final int BATCH_SIZE = 64 * 1024;
+
+	static ByteString sparseBatch() {
+		byte[] batch = new byte[BATCH_SIZE];
+		for (int i = 0; i < batch.length; i += 1000)
+			batch[i] = (byte) i;
+		return ByteString.fromArray(batch);
+	}
+
+	static ByteString randomBatch(int seed) {
+		byte[] batch = new byte[BATCH_SIZE];
+		new Random(seed).nextBytes(batch);
+		return ByteString.fromArray(batch);
+	}
+
+	@Test
+	public void testSparseBatchesShrink() throws ZipException {
+		try (BatchCompressor compressor = new BatchCompressor()) {
+			// Compressible samples keep the compression enabled for the batches after them
+			for (int i = 0; i <= BatchCompressor.SAMPLE_BATCHES; i++) {
+				ByteString batch = sparseBatch();
+				ByteString compressed = compressor.compress(batch);
+				assertNotNull(compressed);
+				assertTrue(compressed.length() <= batch.length() * BatchCompressor.MAX_COMPRESSION_RATIO);
+				assertArrayEquals(batch.toArray(), BatchCompressor.decompress(compressed, batch.length()));
+			}
+		}
+	}
+
+	@Test
+	public void testIncompressibleSamplesDisableCompression() {
+		try (BatchCompressor compressor = new BatchCompressor()) {
+			for (int i = 0; i < BatchCompressor.SAMPLE_BATCHES; i++)
+				assertNull(compressor.compress(randomBatch(i)));
+
+			// Once the samples have not shrunk, not even a batch that would shrink is compressed anymore
+			assertNull(compressor.compress(sparseBatch()));
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package de.hpi.ddm;
+
+import com.opencsv.CSVReader;
+import de.hpi.ddm.actors.Worker;
+import de.hpi.ddm.configuration.Configuration;
+import de.hpi.ddm.configuration.ConfigurationSingleton;
+import de.hpi.ddm.configuration.DatasetDescriptor;
+import de.hpi.ddm.configuration.DatasetDescriptorSingleton;
+import de.hpi.ddm.structures.PasswordInfo;
+import de.hpi.ddm.utils.PasswordComplexity;
+import de.hpi.ddm.utils.RangeSearchTask;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Estimates the candidates and the wall time of cracking a dataset without cracking it. Records are grouped by
+ * universe, password length and number of hints; each group follows the master's hint-vs-password strategy, and
+ * a short local calibration of both hash kernels turns the group's candidates into time.
+ */
+public class CostPlanner implements AutoCloseable {
+
+    public static final String PLAN_COMMAND = "plan";
+
+    private static final String NO_MATCH = new String(new char[64]).replace('\0', '0');
+    private static final long LEAVES_PER_THREAD = 8;
+    private static final long LEAF_SIZE = 1 << 14;
+
+    private static class Group {
+        private final PasswordInfo sample;
+        private final PasswordComplexity complexity;
+        private int records;
+
+        private Group(PasswordInfo sample) {
+            this.sample = sample;
+            this.complexity = new PasswordComplexity(sample);
+            this.complexity.calcNumberOfHintsToCrack();
+        }
+
+        private long hintCandidates() {
+            return (long) this.records * this.complexity.getNumHintsToCrack() * this.complexity.getHintSpaceSize();
+        }
+
+        private long passwordCandidates() {
+            return (long) this.records * this.complexity.getPasswordSpaceSize();
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final long calibrationMillis;
+
+    public CostPlanner(int parallelism, long calibrationMillis) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.calibrationMillis = calibrationMillis;
+    }
+
+    public static void start() {
+        final Configuration c = ConfigurationSingleton.get();
+
+        try (CostPlanner planner = new CostPlanner(c.getNumWorkers(), c.getCalibrationMillis())) {
+            planner.plan(DatasetDescriptorSingleton.get(), Math.max(1, c.getNumNodes()));
+        }
+    }
+
+    /**
+     * Prints one line per group of equally complex records and the estimated wall time of the whole dataset.
+     * The worst case searches every space completely; the expected case finds each match halfway on average.
+     */
+    public void plan(DatasetDescriptor dataset, int numNodes) {
+        Map<String, Group> groups = read(dataset);
+
+        double totalSeconds = 0;
+        long totalCandidates = 0;
+        for (Group group : groups.values()) {
+            PasswordComplexity complexity = group.complexity;
+            double hintRate = group.hintCandidates() == 0 ? 0 : this.calibrate(new Worker.HintWorkload(0, group.sample.getUniverse(), NO_MATCH));
+            double passwordRate = this.calibrate(passwordWorkload(group));
+            double seconds = (hintRate == 0 ? 0 : group.hintCandidates() / hintRate) + group.passwordCandidates() / passwordRate;
+
+            totalSeconds += seconds;
+            totalCandidates += group.hintCandidates() + group.passwordCandidates();
+
+            System.out.println(String.format("Group(Universe: %s, Length: %d, Hints: %d): %d records, crack %d hints of %d candidates, then passwords of %d candidates",
+                    new String(group.sample.getUniverse()), complexity.getPasswordLength(), complexity.getNumHints(), group.records,
+                    complexity.getNumHintsToCrack(), complexity.getHintSpaceSize(), complexity.getPasswordSpaceSize()));
+            System.out.println(String.format("    %d hint and %d password candidates at %.0f and %.0f hashes/s per node",
+                    group.hintCandidates(), group.passwordCandidates(), hintRate, passwordRate));
+        }
+
+        double seconds = totalSeconds / numNodes;
+        System.out.println(String.format("Total: %d records, %d candidates, on %d nodes about %s worst case and %s expected",
+                groups.values().stream().mapToInt(group -> group.records).sum(), totalCandidates, numNodes,
+                format(seconds), format(seconds / 2)));
+    }
+
+    /**
+     * Searches the workload's space for a hash that never matches until the calibration time is over.
+     * @return the node's hash rate with all threads of the pool in candidates per second
+     */
+    private double calibrate(Worker.Workload workload) {
+        long sliceSize = LEAF_SIZE * LEAVES_PER_THREAD * this.pool.getParallelism();
+        long candidates = 0;
+        long start = System.nanoTime();
+        long deadline = start + this.calibrationMillis * 1_000_000;
+
+        long from = workload.getRangeStart();
+        do {
+            long to = Math.min(workload.getRangeEnd(), from + sliceSize);
+            candidates += this.pool.invoke(new RangeSearchTask(workload, from, to)).getCandidates();
+            from = to == workload.getRangeEnd() ? workload.getRangeStart() : to;
+        } while (System.nanoTime() < deadline);
+
+        return candidates / ((System.nanoTime() - start) / 1_000_000_000.0);
+    }
+
+    /**
+     * @return a workload with the password kernel's parameters once the group's hints are cracked
+     */
+    private static Worker.Workload passwordWorkload(Group group) {
+        PasswordInfo info = group.sample;
+        String[] line = new String[5 + info.getHintHashes().length];
+        line[0] = "0";
+        line[1] = info.getName();
+        line[2] = new String(info.getUniverse());
+        line[3] = String.valueOf(info.getPasswordLength());
+        line[4] = NO_MATCH;
+        System.arraycopy(info.getHintHashes(), 0, line, 5, info.getHintHashes().length);
+
+        char[] universe = Arrays.copyOf(info.getUniverse(), info.getUniverse().length - group.complexity.getNumHintsToCrack());
+        return new Worker.PasswordWorkload(0, universe, new PasswordInfo(line));
+    }
+
+    private static Map<String, Group> read(DatasetDescriptor dataset) {
+        Map<String, Group> groups = new LinkedHashMap<>();
+        try (CSVReader reader = dataset.createCSVReader()) {
+            String[] line;
+            while ((line = reader.readNext()) != null) {
+                PasswordInfo info = new PasswordInfo(line);
+                String key = new String(info.getUniverse()) + "|" + info.getPasswordLength() + "|" + info.getHintHashes().length;
+                groups.computeIfAbsent(key, k -> new Group(info)).records++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return groups;
+    }
+
+    private static String format(double seconds) {
+        long s = Math.round(seconds);
+        return String.format("%d:%02d:%02d", s / 3600, s / 60 % 60, s % 60);
+    }
+
+    @Override
+    public void close() {
+        this.pool.shutdown();
+    }
+}
@@ -3,7 +3,9 @@ package de.hpi.ddm;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
 
+import de.hpi.ddm.configuration.CommandLocal;
 import de.hpi.ddm.configuration.CommandMaster;
+import de.hpi.ddm.configuration.CommandPlan;
 import de.hpi.ddm.configuration.CommandSlave;
 import de.hpi.ddm.configuration.ConfigurationSingleton;
 import de.hpi.ddm.configuration.DatasetDescriptorSingleton;
@@ -14,9 +16,13 @@ public class Main {
 		
 		CommandMaster commandMaster = new CommandMaster();
         CommandSlave commandSlave = new CommandSlave();
+        CommandLocal commandLocal = new CommandLocal();
+        CommandPlan commandPlan = new CommandPlan();
         JCommander jCommander = JCommander.newBuilder()
         	.addCommand(MasterSystem.MASTER_ROLE, commandMaster)
             .addCommand(SlaveSystem.SLAVE_ROLE, commandSlave)
+            .addCommand(PasswordCrackingEngine.LOCAL_COMMAND, commandLocal)
+            .addCommand(CostPlanner.PLAN_COMMAND, commandPlan)
             .build();
         
         try {
@@ -38,6 +44,18 @@ public class Main {
                 	
                 	SlaveSystem.start();
                     break;
+                case PasswordCrackingEngine.LOCAL_COMMAND:
+                	ConfigurationSingleton.get().update(commandLocal);
+                	DatasetDescriptorSingleton.get().update(commandLocal);
+                	
+                	PasswordCrackingEngine.start();
+                    break;
+                case CostPlanner.PLAN_COMMAND:
+                	ConfigurationSingleton.get().update(commandPlan);
+                	DatasetDescriptorSingleton.get().update(commandPlan);
+                	
+                	CostPlanner.start();
+                    break;
                 default:
                     throw new AssertionError();
             }
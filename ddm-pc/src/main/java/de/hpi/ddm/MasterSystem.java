@@ -3,14 +3,18 @@ package de.hpi.ddm;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.cluster.Cluster;
+import com.sun.net.httpserver.HttpServer;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import de.hpi.ddm.actors.*;
+import de.hpi.ddm.actors.listeners.MetricsListener;
 import de.hpi.ddm.configuration.Configuration;
 import de.hpi.ddm.configuration.ConfigurationSingleton;
+import de.hpi.ddm.structures.MetricsRegistrySingleton;
 import scala.concurrent.Await;
 import scala.concurrent.duration.Duration;
 
+import java.io.IOException;
 import java.util.Scanner;
 import java.util.concurrent.TimeUnit;
 
@@ -32,7 +36,6 @@ public class MasterSystem {
 
 
         //	ActorRef clusterListener = system.actorOf(ClusterListener.props(), ClusterListener.DEFAULT_NAME);
-        //	ActorRef metricsListener = system.actorOf(MetricsListener.props(), MetricsListener.DEFAULT_NAME);
 
         ActorRef reaper = system.actorOf(Reaper.props(), Reaper.DEFAULT_NAME);
 
@@ -42,10 +45,25 @@ public class MasterSystem {
 
         ActorRef master = system.actorOf(Master.props(reader, collector), Master.DEFAULT_NAME);
 
+        ActorRef metricsListener = system.actorOf(MetricsListener.props(master), MetricsListener.DEFAULT_NAME);
+
+        if (c.getStatusPort() > 0) {
+            try {
+                HttpServer statusEndpoint = StatusEndpoint.start(c.getHost(), c.getStatusPort(), MetricsRegistrySingleton.get());
+                system.registerOnTermination(() -> statusEndpoint.stop(0));
+                system.log().info("Serving metrics at http://{}:{}{}", c.getHost(), c.getStatusPort(), StatusEndpoint.METRICS_PATH);
+            } catch (IOException e) {
+                system.log().error(e, "Could not start the status endpoint on port {}", c.getStatusPort());
+            }
+        }
+
         Cluster.get(system).registerOnMemberUp(new Runnable() {
             @Override
             public void run() {
-                for (int i = 0; i < c.getNumWorkers(); i++)
+                if (c.isNodeDispatcher() && c.getNumLocalWorkers() > 0)
+                    system.actorOf(NodeDispatcher.props(), NodeDispatcher.DEFAULT_NAME);
+
+                for (int i = 0; i < c.getNumLocalWorkers(); i++)
                     system.actorOf(Worker.props(), Worker.DEFAULT_NAME + i);
 
                 if (!c.isStartPaused())
@@ -0,0 +1,122 @@
+package de.hpi.ddm;
+
+import com.opencsv.CSVReader;
+import de.hpi.ddm.actors.Worker;
+import de.hpi.ddm.configuration.Configuration;
+import de.hpi.ddm.configuration.ConfigurationSingleton;
+import de.hpi.ddm.configuration.DatasetDescriptor;
+import de.hpi.ddm.configuration.DatasetDescriptorSingleton;
+import de.hpi.ddm.structures.PasswordInfo;
+import de.hpi.ddm.utils.PasswordComplexity;
+import de.hpi.ddm.utils.RangeCracker;
+import de.hpi.ddm.utils.RangeSearchTask;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Cracks a password dataset within the calling JVM. All records are cracked concurrently on one ForkJoinPool
+ * with the same candidate generators and hash kernels as the workers, but without an actor system or messaging.
+ */
+public class PasswordCrackingEngine implements AutoCloseable {
+
+    public static final String LOCAL_COMMAND = "local";
+
+    @Data
+    @AllArgsConstructor
+    public static class Result {
+        private int passwordID;
+        private String name;
+        private String password;
+
+        @Override
+        public String toString() {
+            return String.format("Result(ID: %d, Name: %s, Password: %s)", this.passwordID, this.name, this.password);
+        }
+    }
+
+    private final ForkJoinPool pool;
+
+    public PasswordCrackingEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public PasswordCrackingEngine(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    public static void start() {
+        final Configuration c = ConfigurationSingleton.get();
+
+        long startTime = System.currentTimeMillis();
+        try (PasswordCrackingEngine engine = new PasswordCrackingEngine(c.getNumWorkers())) {
+            engine.crack(DatasetDescriptorSingleton.get()).join().forEach(System.out::println);
+        }
+        System.out.println("Algorithm finished in " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    /**
+     * Reads the dataset and cracks all of its passwords.
+     * @return the results in the order of the dataset's records
+     */
+    public CompletableFuture<List<Result>> crack(DatasetDescriptor dataset) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<String[]> lines = read(dataset);
+            if (lines.isEmpty())
+                return Collections.emptyList();
+
+            PasswordComplexity complexity = new PasswordComplexity(new PasswordInfo(lines.get(0)));
+            complexity.calcNumberOfHintsToCrack();
+
+            List<ForkJoinTask<Result>> tasks = new ArrayList<>(lines.size());
+            for (String[] line : lines)
+                tasks.add(ForkJoinTask.adapt(() -> this.crack(line, complexity.getNumHintsToCrack())).fork());
+
+            List<Result> results = new ArrayList<>(tasks.size());
+            for (ForkJoinTask<Result> task : tasks)
+                results.add(task.join());
+            return results;
+        }, this.pool);
+    }
+
+    private Result crack(String[] line, int numHintsToCrack) {
+        int passwordID = Integer.parseInt(line[0]);
+        PasswordInfo info = new PasswordInfo(line);
+
+        for (int i = 0; i < numHintsToCrack; i++) {
+            String hintHash = info.getHintHashes()[i];
+            String hint = this.search(new Worker.HintWorkload(passwordID, info.getUniverse(), hintHash));
+            if (hint != null)
+                info.crackHint(hintHash, hint);
+        }
+
+        String password = this.search(new Worker.PasswordWorkload(passwordID, info.getPasswordChars(), info));
+        return new Result(passwordID, info.getName(), password);
+    }
+
+    private String search(Worker.Workload workload) {
+        RangeCracker.Result result = new RangeSearchTask(workload, workload.getRangeStart(), workload.getRangeEnd()).invoke();
+        return result.getMatch();
+    }
+
+    private static List<String[]> read(DatasetDescriptor dataset) {
+        try (CSVReader reader = dataset.createCSVReader()) {
+            return reader.readAll();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        this.pool.shutdown();
+    }
+}
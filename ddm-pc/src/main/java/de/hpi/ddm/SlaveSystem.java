@@ -5,6 +5,7 @@ import akka.actor.ActorSystem;
 import akka.cluster.Cluster;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
+import de.hpi.ddm.actors.NodeDispatcher;
 import de.hpi.ddm.actors.Reaper;
 import de.hpi.ddm.actors.Worker;
 import de.hpi.ddm.configuration.Configuration;
@@ -36,7 +37,10 @@ public class SlaveSystem {
         ActorRef reaper = system.actorOf(Reaper.props(), Reaper.DEFAULT_NAME);
 
         Cluster.get(system).registerOnMemberUp(() -> {
-            for (int i = 0; i < c.getNumWorkers(); i++)
+            if (c.isNodeDispatcher() && c.getNumLocalWorkers() > 0)
+                system.actorOf(NodeDispatcher.props(), NodeDispatcher.DEFAULT_NAME);
+
+            for (int i = 0; i < c.getNumLocalWorkers(); i++)
                 system.actorOf(Worker.props(), Worker.DEFAULT_NAME + i);
         });
 
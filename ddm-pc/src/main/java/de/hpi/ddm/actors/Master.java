@@ -1,14 +1,38 @@
 package de.hpi.ddm.actors;
 
 import akka.actor.*;
+import akka.cluster.Cluster;
+import akka.pattern.Patterns;
+import de.hpi.ddm.configuration.Configuration;
+import de.hpi.ddm.configuration.ConfigurationSingleton;
+import de.hpi.ddm.events.CrackingEvents;
+import de.hpi.ddm.structures.CheckpointJournal;
+import de.hpi.ddm.structures.ChunkSizer;
+import de.hpi.ddm.structures.HintLookupTable;
+import de.hpi.ddm.structures.MetricsRegistry;
+import de.hpi.ddm.structures.MetricsRegistrySingleton;
 import de.hpi.ddm.structures.PasswordInfo;
+import de.hpi.ddm.structures.ProgressTracker;
+import de.hpi.ddm.structures.SolvedHashCache;
+import de.hpi.ddm.structures.WorkloadLatencies;
 import de.hpi.ddm.utils.PasswordComplexity;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 public class Master extends AbstractLoggingActor {
 
@@ -18,6 +42,8 @@ public class Master extends AbstractLoggingActor {
 
     public static final String DEFAULT_NAME = "master";
 
+    private static final long PROGRESS_INTERVAL_MILLIS = 5000;
+
     public static Props props(final ActorRef reader, final ActorRef collector) {
         return Props.create(Master.class, () -> new Master(reader, collector));
     }
@@ -26,6 +52,7 @@ public class Master extends AbstractLoggingActor {
         this.reader = reader;
         this.collector = collector;
         this.workers = new ArrayList<>();
+        this.cluster = Cluster.get(this.context().system());
     }
 
     ////////////////////
@@ -64,8 +91,10 @@ public class Master extends AbstractLoggingActor {
 
     @Data
     @NoArgsConstructor
+    @AllArgsConstructor
     public static class RegistrationMessage implements Serializable {
         private static final long serialVersionUID = 3303081601659723997L;
+        private int capacity = 1;	// The number of workers that the registered actor dispatches its workloads to
     }
 
     @Data
@@ -74,6 +103,7 @@ public class Master extends AbstractLoggingActor {
     public static class HintSuccessMessage implements Serializable {
         private static final long serialVersionUID = -8116992589322209006L;
         private int passwordID;
+        private String hash;	// The hint hash that has been cracked, because the worker may have been reassigned meanwhile
         private String hint;
     }
 
@@ -86,6 +116,61 @@ public class Master extends AbstractLoggingActor {
         private String password;
     }
 
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class WorkloadCompletedMessage implements Serializable {
+        private static final long serialVersionUID = -3563232962374046573L;
+        private long candidates;
+        private long executionNanos;
+    }
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class WorkStolenMessage implements Serializable {
+        private static final long serialVersionUID = -4472310985436123317L;
+        private ActorRef victim;
+        private Worker.Workload workload;	// The upper half of the victim's remaining range that the sender now searches
+    }
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class ReturnWorkMessage implements Serializable {
+        private static final long serialVersionUID = 5530913677203348571L;
+        private Worker.Workload workload;
+    }
+
+    @Data
+    public static class ReadyMessage implements Serializable {
+        private static final long serialVersionUID = -7019437721590246364L;
+    }
+
+    @Data
+    private static class ReportProgressMessage implements Serializable {
+        private static final long serialVersionUID = 4021938877130546190L;
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class HintTableBuiltMessage {
+        private char[] universe;
+        private HintLookupTable table;	// Null if the build failed
+        private Throwable failure;
+        private long buildMillis;
+    }
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class NodeMetricsMessage implements Serializable {
+        private static final long serialVersionUID = 2875016384458329473L;
+        private Address node;
+        private double loadPerProcessor;
+        private double heapUsage;
+    }
+
     /////////////////
     // Actor State //
     /////////////////
@@ -97,9 +182,33 @@ public class Master extends AbstractLoggingActor {
     private PasswordComplexity passwordComplexity;
     private Map<Integer, PasswordInfo> passwords;
 
-    private Queue<Worker.Workload> unassignedWork;
+    private Deque<Worker.Workload> unassignedWork;
     private Queue<ActorRef> idleWorkers;
     private Map<ActorRef, Worker.Workload> busyWorkers;
+    private Set<ActorRef> stealingWorkers;
+    private boolean workStealing;
+    private boolean staticSweep;
+
+    private final Cluster cluster;
+    private ChunkSizer chunkSizer;
+    private boolean readingFinished;
+    private boolean finishRequested;
+
+    private Map<String, HintLookupTable> hintTables;	// Maps to null while a table is built or if it cannot be used
+    private SolvedHashCache solvedCache;
+
+    private CheckpointJournal journal;
+    private CheckpointJournal.Replay replay;
+    private Deque<Integer> unsolvedRecords;
+    private long solvedOffset;
+
+    private WorkloadLatencies latencies;
+    private Map<ActorRef, Long> dispatchTimes;
+    private Map<ActorRef, Long> completionTimes;
+
+    private ProgressTracker progress;
+    private ObjectName progressName;
+    private Cancellable progressReport;
 
     private long startTime;
 
@@ -108,12 +217,60 @@ public class Master extends AbstractLoggingActor {
     /////////////////////
 
     @Override
-    public void preStart() {
+    public void preStart() throws Exception {
         Reaper.watchWithDefaultReaper(this);
         unassignedWork = new LinkedList<>();
         idleWorkers = new LinkedList<>();
         busyWorkers = new HashMap<>();
+        stealingWorkers = new HashSet<>();
         passwords = new HashMap<>(200);
+        unsolvedRecords = new ArrayDeque<>();
+        hintTables = new HashMap<>();
+        latencies = new WorkloadLatencies();
+        dispatchTimes = new HashMap<>();
+        completionTimes = new HashMap<>();
+        progress = new ProgressTracker();
+
+        Configuration c = ConfigurationSingleton.get();
+        chunkSizer = new ChunkSizer(c.getChunkMillis());
+        staticSweep = c.isStaticSweep();
+        workStealing = (c.isWorkStealing() || staticSweep) && !c.isNodeDispatcher();
+
+        File journalFile = new File(c.getJournalPath());
+        if (!c.isResume()) {
+            // The journal of a crashed run must survive a restart that forgets --resume
+            File rotated = CheckpointJournal.rotate(journalFile);
+            if (rotated != null)
+                this.log().info("Moved the journal of a previous run to {}; resume that run with --journalPath {} --resume", rotated, rotated);
+        }
+        replay = c.isResume() ? CheckpointJournal.replay(journalFile) : new CheckpointJournal.Replay();
+        journal = new CheckpointJournal(journalFile, c.isResume(), CheckpointJournal.DEFAULT_SYNC_INTERVAL);
+
+        if (c.getSolvedCachePath() != null) {
+            solvedCache = SolvedHashCache.load(new File(c.getSolvedCachePath()), c.getSolvedCacheSize());
+        }
+
+        try {
+            progressName = new ObjectName("de.hpi.ddm:type=Master,name=progress");
+            ManagementFactory.getPlatformMBeanServer().registerMBean(progress, progressName);
+        } catch (JMException e) {
+            this.log().warning("Could not register the progress MBean: {}", e.getMessage());
+            progressName = null;
+        }
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        if (progressReport != null) {
+            progressReport.cancel();
+        }
+        if (progressName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(progressName);
+        }
+        journal.close();
+        if (solvedCache != null) {
+            solvedCache.save();
+        }
     }
 
     ////////////////////
@@ -132,6 +289,13 @@ public class Master extends AbstractLoggingActor {
                 .match(RegistrationMessage.class, this::handle)
                 .match(HintSuccessMessage.class, this::handle)
                 .match(PasswordSuccessMessage.class, this::handle)
+                .match(WorkloadCompletedMessage.class, this::handle)
+                .match(WorkStolenMessage.class, this::handle)
+                .match(ReturnWorkMessage.class, this::handle)
+                .match(ReadyMessage.class, this::handle)
+                .match(NodeMetricsMessage.class, this::handle)
+                .match(ReportProgressMessage.class, this::handle)
+                .match(HintTableBuiltMessage.class, this::handle)
                 .matchAny(object -> this.log().info("Received unknown message: \"{}\"", object.toString()))
                 .build();
     }
@@ -139,13 +303,65 @@ public class Master extends AbstractLoggingActor {
     protected void handle(StartMessage message) {
         this.startTime = System.currentTimeMillis();
         this.reader.tell(new Reader.InitialInfoRequest(), this.self());
+
+        progress.sample(System.nanoTime());
+        FiniteDuration interval = Duration.create(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        this.progressReport = this.context().system().scheduler().schedule(interval, interval,
+                this.self(), new ReportProgressMessage(), this.context().dispatcher(), this.self());
+    }
+
+    protected void handle(ReportProgressMessage message) {
+        progress.sample(System.nanoTime());
+        long eta = progress.getEtaSeconds();
+        this.log().info("Progress: {}% of the candidates of {} records explored, {} records solved, ETA {}",
+                String.format("%.1f", progress.getPercentComplete()), progress.getRecords(), progress.getSolvedRecords(),
+                eta < 0 ? "unknown" : String.format("%d:%02d:%02d", eta / 3600, eta / 60 % 60, eta % 60));
+        this.publishMetrics();
+        this.checkpoint();
+    }
+
+    /**
+     * Bounds what a crash loses to one progress interval: journal records that did not fill up a sync interval
+     * and hashes that have been cracked since the solved-hash cache was last saved.
+     */
+    private void checkpoint() {
+        try {
+            journal.sync();
+        } catch (IOException e) {
+            this.log().error(e, "Could not sync the journal");
+        }
+        if (solvedCache != null && solvedCache.isModified()) {
+            try {
+                solvedCache.save();
+            } catch (IOException e) {
+                this.log().error(e, "Could not save the solved-hash cache");
+            }
+        }
+    }
+
+    private void publishMetrics() {
+        MetricsRegistry metrics = MetricsRegistrySingleton.get();
+        metrics.gauge("ddm_unassigned_workloads", "Workloads waiting in the master's queue", unassignedWork.size());
+        metrics.gauge("ddm_idle_workers", "Workers waiting for a workload", idleWorkers.size());
+        metrics.gauge("ddm_busy_workers", "Workers executing a workload", busyWorkers.size());
+        metrics.gauge("ddm_stealing_workers", "Workers trying to steal from their peers", stealingWorkers.size());
+        metrics.gauge("ddm_records_read", "Records read from the dataset", progress.getRecords());
+        metrics.gauge("ddm_records_remaining", "Records read but not yet solved", progress.getRecords() - progress.getSolvedRecords());
+        metrics.gauge("ddm_candidates_per_second", "Candidates explored per second over the recent progress samples", progress.getCandidatesPerSecond());
+        metrics.gauge("ddm_eta_seconds", "Estimated seconds until all records read so far are solved; -1 if unknown", progress.getEtaSeconds());
+        if (solvedCache != null) {
+            metrics.counter("ddm_solved_cache_hits_total", "Hashes found in the solved-hash cache", solvedCache.getHits());
+            metrics.counter("ddm_solved_cache_misses_total", "Hashes looked up in vain in the solved-hash cache", solvedCache.getMisses());
+            metrics.gauge("ddm_solved_cache_entries", "Hashes held by the solved-hash cache", solvedCache.size());
+        }
     }
 
     protected void handle(RegistrationMessage message) {
         this.context().watch(this.sender());
         this.workers.add(this.sender());
-        this.idleWorkers.add(this.sender());
-        assignWork(this.sender());
+        this.chunkSizer.setCapacity(this.sender(), message.getCapacity());
+        announcePeers();
+        offerWork(this.sender());
         this.log().info("Registered {}", this.sender());
     }
 
@@ -154,47 +370,152 @@ public class Master extends AbstractLoggingActor {
         passwordComplexity = new PasswordComplexity(initialInfo);
         passwordComplexity.calcNumberOfHintsToCrack();
 
+        resumeFromJournal();
+
         this.reader.tell(new Reader.ReadMessage(), this.self());
     }
 
+    private void resumeFromJournal() {
+        if (replay.isEmpty()) {
+            return;
+        }
+        this.log().info("Resuming from journal: {} passwords and {} hints already cracked, skipping {} records",
+                replay.getPasswords().size(),
+                replay.getHints().values().stream().mapToInt(Map::size).sum(),
+                replay.getOffset());
+
+        replay.getPasswords().forEach((id, nameAndPassword) ->
+                collectResult(id, nameAndPassword[0], nameAndPassword[1]));
+
+        solvedOffset = replay.getOffset();
+        if (solvedOffset > 0) {
+            this.reader.tell(new Reader.SkipMessage(solvedOffset), this.self());
+        }
+    }
+
     protected void handle(PasswordSuccessMessage passwordSuccessMessage) {
         int id = passwordSuccessMessage.getPasswordID();
         String password = passwordSuccessMessage.getPassword();
         PasswordInfo passwordInfo = passwords.remove(id);
-        String result = String.format("Result(ID: %d, Name: %s, Password: %s)", id, passwordInfo.getName(), password);
-        this.collector.tell(new Collector.CollectMessage(result), this.self());
-
-        reassignWork(this.sender());
-
-        if (passwords.isEmpty() && unassignedWork.isEmpty() && busyWorkers.isEmpty()) {
-            this.reader.tell(new Reader.FinishedReadingRequest(), this.self());
+        if (passwordInfo == null) {
+            return;
         }
+        recordSuccess(this.sender());
+        progress.solveRecord(passwordInfo.getPasswordHash());
+        collectResult(id, passwordInfo.getName(), password);
+        journalPassword(id, passwordInfo.getName(), password);
+        cacheSolution(passwordInfo.getPasswordHash(), password);
+        advanceSolvedOffset();
+
+        discardSolvedWork();
+        checkFinished();
     }
 
     protected void handle(HintSuccessMessage hintSuccessMessage) {
         int id = hintSuccessMessage.getPasswordID();
         String hint = hintSuccessMessage.getHint();
+        String hash = hintSuccessMessage.getHash();
+        if (solveHint(id, hash, hint)) {
+            recordSuccess(this.sender());
+        }
+    }
+
+    private boolean solveHint(int id, String hash, String hint) {
         PasswordInfo pwInfo = passwords.get(id);
-        pwInfo.applyHint(hint);
-        pwInfo.incrementHintIndex();
-        passwords.put(id, pwInfo);
+        if (pwInfo == null || !pwInfo.crackHint(hash, hint)) {
+            return false;
+        }
+        progress.solve(hash);
+        journalHint(id, hash, hint);
+        cacheSolution(hash, hint);
+        discardSolvedWork();
 
         if (pwInfo.getCurrHintIndex() == passwordComplexity.getNumHintsToCrack()) {
             createPasswordWorkload(id, pwInfo);
+            assignWork();
+        }
+        return true;
+    }
+
+    protected void handle(WorkloadCompletedMessage message) {
+        chunkSizer.recordCompletion(this.sender(), message.getCandidates(), message.getExecutionNanos());
+        recordCompletion(this.sender(), message.getExecutionNanos());
+        Worker.Workload work = busyWorkers.get(this.sender());
+        if (work != null) {
+            progress.explore(work.getHash(), message.getCandidates());
         }
         reassignWork(this.sender());
+        checkFinished();
+    }
+
+    protected void handle(NodeMetricsMessage message) {
+        chunkSizer.updateNode(message.getNode(), message.getLoadPerProcessor(), message.getHeapUsage());
+    }
+
+    protected void handle(WorkStolenMessage message) {
+        Worker.Workload stolen = message.getWorkload();
+        Worker.Workload victimWork = busyWorkers.get(message.getVictim());
+        if (victimWork != null && victimWork.getHash().equals(stolen.getHash())
+                && victimWork.getRangeStart() < stolen.getRangeStart() && stolen.getRangeStart() < victimWork.getRangeEnd()) {
+            victimWork.setRangeEnd(stolen.getRangeStart());
+        }
+        stealingWorkers.remove(this.sender());
+        idleWorkers.remove(this.sender());
+        busyWorkers.put(this.sender(), stolen);
+        dispatchTimes.put(this.sender(), System.nanoTime());
+    }
+
+    protected void handle(ReturnWorkMessage message) {
+        if (isLive(message.getWorkload())) {
+            // The creation time does not survive serialization, so the queue wait starts anew with the return
+            message.getWorkload().setCreatedNanos(System.nanoTime());
+            unassignedWork.addFirst(message.getWorkload());
+            assignWork();
+        }
+    }
+
+    protected void handle(ReadyMessage message) {
+        ActorRef worker = this.sender();
+        if (workers.contains(worker) && !busyWorkers.containsKey(worker) && !idleWorkers.contains(worker)) {
+            stealingWorkers.remove(worker);
+            offerWork(worker);
+        }
     }
 
     private void reassignWork(ActorRef worker) {
-        if (busyWorkers.containsKey(worker)) {
-            busyWorkers.remove(worker);
-            idleWorkers.add(worker);
-            assignWork(worker);
+        if (busyWorkers.remove(worker) != null) {
+            offerWork(worker);
         }
     }
 
+    private void offerWork(ActorRef worker) {
+        idleWorkers.add(worker);
+        assignWork(worker);
+        // A held sweep waits for the busy workers, so their idle peers help them finish the tail of the last one
+        boolean sweepHeld = staticSweep && !busyWorkers.isEmpty();
+        if (workStealing && (unassignedWork.isEmpty() || sweepHeld) && idleWorkers.remove(worker)) {
+            stealingWorkers.add(worker);
+            worker.tell(new Worker.NoWorkMessage(), this.self());
+        }
+    }
+
+    private void announcePeers() {
+        if (workStealing) {
+            for (ActorRef worker : workers) {
+                worker.tell(new Worker.PeersMessage(new ArrayList<>(workers)), this.self());
+            }
+        }
+    }
+
+    private void collectResult(int id, String name, String password) {
+        String result = String.format("Result(ID: %d, Name: %s, Password: %s)", id, name, password);
+        this.collector.tell(new Collector.CollectMessage(result), this.self());
+    }
+
     protected void handle(BatchMessage message) {
         if (message.getLines().isEmpty()) {
+            readingFinished = true;
+            checkFinished();
             return;
         }
         processBatch(message.getLines());
@@ -205,8 +526,20 @@ public class Master extends AbstractLoggingActor {
     private void processBatch(List<String[]> lines) {
         for (String[] line : lines) {
             int pwID = Integer.parseInt(line[0]);
+            unsolvedRecords.add(pwID);
+            if (replay.getPasswords().containsKey(pwID)) {
+                continue;
+            }
+
             PasswordInfo pwInfo = new PasswordInfo(line);
+            String cachedPassword = lookupSolution(pwInfo.getPasswordHash());
+            if (cachedPassword != null) {
+                collectResult(pwID, pwInfo.getName(), cachedPassword);
+                journalPassword(pwID, pwInfo.getName(), cachedPassword);
+                continue;
+            }
             passwords.put(pwID, pwInfo);
+            progress.addRecord(pwInfo, passwordComplexity);
 
             if (passwordComplexity.getNumHintsToCrack() == 0) {
                 createPasswordWorkload(pwID, pwInfo);
@@ -214,64 +547,322 @@ public class Master extends AbstractLoggingActor {
                 createHintWorkloads(pwID, pwInfo);
             }
         }
+        advanceSolvedOffset();
+    }
+
+    private void advanceSolvedOffset() {
+        long previousOffset = solvedOffset;
+        while (!unsolvedRecords.isEmpty() && !passwords.containsKey(unsolvedRecords.peek())) {
+            unsolvedRecords.remove();
+            solvedOffset++;
+        }
+        if (solvedOffset != previousOffset) {
+            journalOffset(solvedOffset);
+        }
     }
 
     protected void handle(Terminated message) {
         ActorRef terminatedWorker = message.getActor();
         this.context().unwatch(terminatedWorker);
         this.workers.remove(terminatedWorker);
+        chunkSizer.remove(terminatedWorker);
+        stealingWorkers.remove(terminatedWorker);
+        dispatchTimes.remove(terminatedWorker);
+        completionTimes.remove(terminatedWorker);
+        announcePeers();
         if (busyWorkers.containsKey(terminatedWorker)) {
             Worker.Workload work = busyWorkers.remove(terminatedWorker);
-            assignWork(work);
+            if (isLive(work)) {
+                unassignedWork.addFirst(work);
+            }
         } else {
             idleWorkers.remove(terminatedWorker);
         }
+        // A held sweep may be waiting for just the terminated worker
+        assignWork();
         this.log().info("Unregistered {}", message.getActor());
     }
 
     private void createHintWorkloads(int passwordID, PasswordInfo passwordInfo) {
         String[] hintHashes = passwordInfo.getHintHashes();
+        Map<String, String> journaledHints = replay.getHints().getOrDefault(passwordID, Collections.emptyMap());
         for (int i = 0; i < passwordComplexity.getNumHintsToCrack(); i++) {
-            unassignedWork.add(new Worker.HintWorkload(passwordID,
-                    passwordInfo.getUniverse(),
-                    hintHashes[i]));
+            String hint = journaledHints.get(hintHashes[i]);
+            if (hint == null) {
+                hint = lookupSolution(hintHashes[i]);
+            }
+            if (hint == null) {
+                hint = lookupHint(passwordInfo.getUniverse(), hintHashes[i]);
+            }
+            if (hint != null) {
+                passwordInfo.crackHint(hintHashes[i], hint);
+                progress.solve(hintHashes[i]);
+            } else {
+                addWork(new Worker.HintWorkload(passwordID,
+                        passwordInfo.getUniverse(),
+                        hintHashes[i]));
+            }
+        }
+        if (passwordInfo.getCurrHintIndex() == passwordComplexity.getNumHintsToCrack()) {
+            createPasswordWorkload(passwordID, passwordInfo);
+        }
+    }
+
+    private String lookupSolution(String hash) {
+        return solvedCache == null ? null : solvedCache.get(hash);
+    }
+
+    private void cacheSolution(String hash, String plaintext) {
+        if (solvedCache != null) {
+            solvedCache.put(hash, plaintext);
+        }
+    }
+
+    private String lookupHint(char[] universe, String hintHash) {
+        String hintTablePath = ConfigurationSingleton.get().getHintTablePath();
+        if (hintTablePath == null) {
+            return null;
+        }
+        String key = new String(universe);
+        if (!hintTables.containsKey(key)) {
+            hintTables.put(key, openHintTable(new File(hintTablePath), universe));
+        }
+        HintLookupTable table = hintTables.get(key);
+        return table == null ? null : table.lookup(hintHash);
+    }
+
+    /**
+     * Maps an existing table right away; a missing or corrupt table is built off the actor thread, and the hints of its
+     * universe are brute-forced until the build reports back.
+     */
+    private HintLookupTable openHintTable(File directory, char[] universe) {
+        File file = HintLookupTable.fileFor(directory, universe);
+        if (file.exists()) {
+            try {
+                HintLookupTable table = HintLookupTable.open(universe, file);
+                this.log().info("Opened hint lookup table for universe {}", new String(universe));
+                return table;
+            } catch (IOException e) {
+                this.log().warning("Could not open hint lookup table for universe {} ({}); building it anew", new String(universe), e.getMessage());
+            }
+        }
+        this.log().info("Building hint lookup table for universe {} in the background", new String(universe));
+        CompletableFuture<HintLookupTable> build = CompletableFuture.supplyAsync(() -> {
+            try {
+                return HintLookupTable.openOrBuild(directory, universe);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        long start = System.currentTimeMillis();
+        Patterns.pipe(build.handle((table, failure) -> new HintTableBuiltMessage(universe, table,
+                failure instanceof CompletionException ? failure.getCause() : failure,
+                System.currentTimeMillis() - start)), this.context().dispatcher()).to(this.self());
+        return null;
+    }
+
+    protected void handle(HintTableBuiltMessage message) {
+        String universe = new String(message.getUniverse());
+        if (message.getTable() == null) {
+            this.log().error(message.getFailure(), "Could not build hint lookup table for universe {}; cracking its hints by brute force", universe);
+            return;
         }
+        this.log().info("Built hint lookup table for universe {} in {} ms", universe, message.getBuildMillis());
+        hintTables.put(universe, message.getTable());
+
+        // The hints that were queued for brute force meanwhile are looked up now; running chunks get cancelled
+        List<Worker.Workload> queued = new ArrayList<>();
+        for (Worker.Workload work : unassignedWork) {
+            if (work instanceof Worker.HintWorkload && universe.equals(new String(work.getUniverse()))) {
+                queued.add(work);
+            }
+        }
+        for (Worker.Workload work : queued) {
+            String hint = message.getTable().lookup(work.getHash());
+            if (hint != null) {
+                solveHint(work.getPasswordID(), work.getHash(), hint);
+            }
+        }
+        checkFinished();
     }
 
     private void createPasswordWorkload(int passwordID, PasswordInfo passwordInfo) {
-        unassignedWork.add(new Worker.PasswordWorkload(passwordID,
+        addWork(new Worker.PasswordWorkload(passwordID,
                 passwordInfo.getPasswordChars(),
                 passwordInfo));
     }
 
+    private void addWork(Worker.Workload work) {
+        unassignedWork.add(work);
+        CrackingEvents.workloadCreated(work.getPasswordID(), work.type(), work.remaining());
+    }
+
+    private boolean isLive(Worker.Workload work) {
+        PasswordInfo passwordInfo = passwords.get(work.getPasswordID());
+        return passwordInfo != null
+                && (work instanceof Worker.PasswordWorkload || !passwordInfo.isHintCracked(work.getHash()));
+    }
+
+    private void discardSolvedWork() {
+        unassignedWork.removeIf(work -> !isLive(work));
+        busyWorkers.forEach((worker, work) -> {
+            if (!isLive(work)) {
+                worker.tell(new Worker.CancelMessage(work.getPasswordID(), work.getHash()), this.self());
+            }
+        });
+    }
+
+    private void checkFinished() {
+        if (readingFinished && !finishRequested && passwords.isEmpty() && unassignedWork.isEmpty()) {
+            finishRequested = true;
+            this.reader.tell(new Reader.FinishedReadingRequest(), this.self());
+        }
+    }
+
+    private Address addressOf(ActorRef worker) {
+        Address address = worker.path().address();
+        return address.hasGlobalScope() ? address : cluster.selfAddress();
+    }
+
+    private Worker.Workload nextChunk(ActorRef worker) {
+        Worker.Workload head = unassignedWork.peek();
+        long chunkSize = chunkSizer.chunkSize(worker, addressOf(worker));
+        if (head.remaining() <= chunkSize + ChunkSizer.MIN_CHUNK_SIZE) {
+            return unassignedWork.remove();
+        }
+        return head.split(chunkSize);
+    }
+
+    private ActorRef nextIdleWorker() {
+        ActorRef fastest = idleWorkers.peek();
+        for (ActorRef worker : idleWorkers) {
+            if (chunkSizer.effectiveRate(worker, addressOf(worker)) > chunkSizer.effectiveRate(fastest, addressOf(fastest))) {
+                fastest = worker;
+            }
+        }
+        return fastest;
+    }
+
     private void assignWork(ActorRef worker) {
-        if (!unassignedWork.isEmpty()) {
-            Worker.Workload work = unassignedWork.remove();
+        if (staticSweep) {
+            assignWork();
+        } else if (!unassignedWork.isEmpty()) {
+            Worker.Workload work = nextChunk(worker);
             worker.tell(work, this.self());
             idleWorkers.remove(worker);
             busyWorkers.put(worker, work);
+            recordDispatch(worker, work);
         }
     }
 
-    private void assignWork(Worker.Workload work) {
-        if (!idleWorkers.isEmpty()) {
-            ActorRef idleWorker = idleWorkers.remove();
-            idleWorker.tell(work, this.self());
-            busyWorkers.put(idleWorker, work);
-        } else {
-            unassignedWork.add(work);
+    private void assignWork() {
+        if (!unassignedWork.isEmpty() && !stealingWorkers.isEmpty() && (!staticSweep || busyWorkers.isEmpty())) {
+            // Workers that are out stealing ask for the new work themselves once they have stopped stealing
+            for (ActorRef worker : stealingWorkers) {
+                worker.tell(new Worker.WorkAvailableMessage(), this.self());
+            }
+            stealingWorkers.clear();
+        }
+        while (!idleWorkers.isEmpty() && !unassignedWork.isEmpty()) {
+            if (staticSweep) {
+                if (idleWorkers.size() < workers.size()) {
+                    break;
+                }
+                sweep(unassignedWork.remove());
+            } else {
+                assignWork(nextIdleWorker());
+            }
         }
     }
 
-    private void assignWork() {
-        if (idleWorkers.isEmpty() || unassignedWork.isEmpty()) {
-            return;
+    /**
+     * Hands the whole workload to all registered workers at once, which are all idle by now; every worker
+     * derives its own share from the sweep, so the master computes the same shares only for its bookkeeping.
+     */
+    private void sweep(Worker.Workload work) {
+        List<ActorRef> participants = new ArrayList<>(workers);
+        boolean measured = participants.stream().allMatch(chunkSizer::hasRate);
+        double[] weights = participants.stream()
+                .mapToDouble(worker -> measured
+                        ? chunkSizer.effectiveRate(worker, addressOf(worker))
+                        : chunkSizer.capacity(worker) * chunkSizer.nodeWeight(addressOf(worker)))
+                .toArray();
+
+        Worker.SweepMessage sweep = new Worker.SweepMessage(work, participants, weights);
+        for (int i = 0; i < participants.size(); i++) {
+            Worker.Workload share = sweep.share(i);
+            participants.get(i).tell(sweep, this.self());
+            busyWorkers.put(participants.get(i), share);
+            recordDispatch(participants.get(i), share);
+        }
+        idleWorkers.clear();
+    }
+
+    private void recordDispatch(ActorRef worker, Worker.Workload work) {
+        long now = System.nanoTime();
+        latencies.record(work.type(), WorkloadLatencies.Phase.QUEUE_WAIT, now - work.getCreatedNanos());
+        CrackingEvents.workloadAssigned(work.getPasswordID(), work.type(), work.remaining(), worker.path());
+        Long completed = completionTimes.remove(worker);
+        if (completed != null) {
+            latencies.record(work.type(), WorkloadLatencies.Phase.RESULT_TO_REASSIGN, now - completed);
+        }
+        dispatchTimes.put(worker, now);
+    }
+
+    private void recordCompletion(ActorRef worker, long executionNanos) {
+        long now = System.nanoTime();
+        Worker.Workload work = busyWorkers.get(worker);
+        Long dispatched = dispatchTimes.remove(worker);
+        if (work != null && dispatched != null) {
+            // Worker clocks are not comparable to ours, so the start is derived from the round trip
+            latencies.record(work.type(), WorkloadLatencies.Phase.EXECUTION, executionNanos);
+            latencies.record(work.type(), WorkloadLatencies.Phase.DISPATCH_TO_START, now - dispatched - executionNanos);
+        }
+        completionTimes.put(worker, now);
+    }
+
+    private void recordSuccess(ActorRef worker) {
+        Worker.Workload work = busyWorkers.get(worker);
+        if (work != null) {
+            CrackingEvents.crackSuccess(work.getPasswordID(), work.type(), work.remaining());
+        }
+    }
+
+    private void reportLatencies() {
+        latencies.summary().forEach(line -> this.log().info("Latency of {}", line));
+
+        String latencyReportPath = ConfigurationSingleton.get().getLatencyReportPath();
+        if (latencyReportPath != null) {
+            try {
+                latencies.writeJson(new File(latencyReportPath));
+            } catch (IOException e) {
+                this.log().error(e, "Could not write latency report to {}", latencyReportPath);
+            }
+        }
+    }
+
+    private void journalHint(int passwordID, String hash, String hint) {
+        try {
+            journal.appendHint(passwordID, hash, hint);
+        } catch (IOException e) {
+            this.log().error(e, "Could not journal hint of password {}", passwordID);
+        }
+    }
+
+    private void journalPassword(int passwordID, String name, String password) {
+        try {
+            journal.appendPassword(passwordID, name, password);
+        } catch (IOException e) {
+            this.log().error(e, "Could not journal password {}", passwordID);
+        }
+    }
+
+    private void journalOffset(long offset) {
+        try {
+            journal.appendOffset(offset);
+        } catch (IOException e) {
+            this.log().error(e, "Could not journal reader offset {}", offset);
         }
-        ActorRef worker = idleWorkers.remove();
-        Worker.Workload work = unassignedWork.remove();
-        worker.tell(work, this.self());
-        busyWorkers.put(worker, work);
-        assignWork();
     }
 
     private void handle(FinishedReadingResponse finishedMessage) {
@@ -295,5 +886,17 @@ public class Master extends AbstractLoggingActor {
 
         long executionTime = System.currentTimeMillis() - this.startTime;
         this.log().info("Algorithm finished in {} ms", executionTime);
+
+        try {
+            journal.appendEnd();
+        } catch (IOException e) {
+            this.log().error(e, "Could not mark the journal as finished");
+        }
+
+        if (solvedCache != null) {
+            this.log().info("Solved-hash cache: {} hits, {} misses, {} entries",
+                    solvedCache.getHits(), solvedCache.getMisses(), solvedCache.size());
+        }
+        reportLatencies();
     }
 }
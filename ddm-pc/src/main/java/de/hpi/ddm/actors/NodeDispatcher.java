@@ -0,0 +1,226 @@
+package de.hpi.ddm.actors;
+
+import akka.actor.*;
+import akka.cluster.Cluster;
+import akka.cluster.ClusterEvent.CurrentClusterState;
+import akka.cluster.ClusterEvent.MemberRemoved;
+import akka.cluster.ClusterEvent.MemberUp;
+import akka.cluster.Member;
+import akka.cluster.MemberStatus;
+import de.hpi.ddm.MasterSystem;
+import de.hpi.ddm.configuration.ConfigurationSingleton;
+import de.hpi.ddm.structures.ChunkSizer;
+
+import java.util.*;
+
+public class NodeDispatcher extends AbstractLoggingActor {
+
+    ////////////////////////
+    // Actor Construction //
+    ////////////////////////
+
+    public static final String DEFAULT_NAME = "dispatcher";
+
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    public static Props props() {
+        return Props.create(NodeDispatcher.class);
+    }
+
+    public NodeDispatcher() {
+        this.cluster = Cluster.get(this.context().system());
+        this.capacity = Math.max(1, ConfigurationSingleton.get().getNumLocalWorkers());
+    }
+
+    /////////////////
+    // Actor State //
+    /////////////////
+
+    private Member masterSystem;
+    private final Cluster cluster;
+    private final int capacity;
+
+    private ActorRef master;
+    private Worker.Workload workload;
+    private long workloadStartTime;
+    private long workloadCandidates;
+
+    private final Deque<Worker.Workload> localWork = new ArrayDeque<>();
+    private final Queue<ActorRef> idleWorkers = new LinkedList<>();
+    private final Map<ActorRef, Worker.Workload> busyWorkers = new HashMap<>();
+
+    /////////////////////
+    // Actor Lifecycle //
+    /////////////////////
+
+    @Override
+    public void preStart() {
+        Reaper.watchWithDefaultReaper(this);
+        this.cluster.subscribe(this.self(), MemberUp.class, MemberRemoved.class);
+    }
+
+    @Override
+    public void postStop() {
+        this.cluster.unsubscribe(this.self());
+
+        // The local workers registered only with this dispatcher, so they end with it
+        for (ActorRef worker : this.idleWorkers)
+            worker.tell(PoisonPill.getInstance(), ActorRef.noSender());
+        for (ActorRef worker : this.busyWorkers.keySet())
+            worker.tell(PoisonPill.getInstance(), ActorRef.noSender());
+    }
+
+    ////////////////////
+    // Actor Behavior //
+    ////////////////////
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(CurrentClusterState.class, this::handle)
+                .match(MemberUp.class, this::handle)
+                .match(MemberRemoved.class, this::handle)
+                .match(Master.RegistrationMessage.class, this::handle)
+                .match(Worker.Workload.class, this::handle)
+                .match(Worker.SweepMessage.class, this::handle)
+                .match(Worker.CancelMessage.class, this::handle)
+                .match(Master.HintSuccessMessage.class, this::handle)
+                .match(Master.PasswordSuccessMessage.class, this::handle)
+                .match(Master.WorkloadCompletedMessage.class, this::handle)
+                .match(Worker.WorkAvailableMessage.class, this::handle)
+                .match(Worker.StealRequest.class, this::handle)
+                .match(Worker.NoWorkMessage.class, message -> {})
+                .match(Worker.PeersMessage.class, message -> {})
+                .match(Terminated.class, this::handle)
+                .matchAny(object -> this.log().info("Received unknown message: \"{}\"", object.toString()))
+                .build();
+    }
+
+    private void handle(Master.RegistrationMessage message) {
+        this.context().watch(this.sender());
+        this.idleWorkers.add(this.sender());
+        this.dispatch();
+    }
+
+    private void handle(Worker.Workload message) {
+        this.master = this.sender();
+        this.workload = message;
+        this.workloadStartTime = System.nanoTime();
+        this.workloadCandidates = 0;
+
+        // The master keeps the received workload for its bookkeeping, so only a copy is cut into local chunks
+        Worker.Workload remainder = message.copy();
+        long chunkSize = Math.max(ChunkSizer.MIN_CHUNK_SIZE, remainder.remaining() / (this.capacity * CHUNKS_PER_WORKER));
+        while (remainder.remaining() > chunkSize)
+            this.localWork.add(remainder.split(chunkSize));
+        this.localWork.add(remainder);
+
+        this.dispatch();
+    }
+
+    private void handle(Worker.SweepMessage message) {
+        Worker.Workload share = message.shareOf(this.self());
+        if (share != null)
+            this.handle(share);
+    }
+
+    private void handle(Worker.CancelMessage message) {
+        this.localWork.removeIf(chunk -> chunk.getHash().equals(message.getHash()));
+        this.busyWorkers.forEach((worker, chunk) -> {
+            if (chunk.getHash().equals(message.getHash()))
+                worker.tell(message, this.self());
+        });
+    }
+
+    private void handle(Master.HintSuccessMessage message) {
+        this.master.tell(message, this.self());
+        this.localWork.clear();
+    }
+
+    private void handle(Master.PasswordSuccessMessage message) {
+        this.master.tell(message, this.self());
+        this.localWork.clear();
+    }
+
+    private void handle(Master.WorkloadCompletedMessage message) {
+        this.workloadCandidates += message.getCandidates();
+        if (this.busyWorkers.remove(this.sender()) != null)
+            this.idleWorkers.add(this.sender());
+
+        this.dispatch();
+        this.completeIfDone();
+    }
+
+    // Node dispatchers do not take part in work stealing; they only wait for the master's next workload
+
+    private void handle(Worker.WorkAvailableMessage message) {
+        this.sender().tell(new Master.ReadyMessage(), this.self());
+    }
+
+    private void handle(Worker.StealRequest message) {
+        this.sender().tell(new Worker.NothingToStealMessage(), this.self());
+    }
+
+    private void handle(Terminated message) {
+        ActorRef worker = message.getActor();
+        this.context().unwatch(worker);
+
+        Worker.Workload chunk = this.busyWorkers.remove(worker);
+        if (chunk != null)
+            this.localWork.addFirst(chunk);
+        else
+            this.idleWorkers.remove(worker);
+
+        if (this.idleWorkers.isEmpty() && this.busyWorkers.isEmpty()) {
+            this.log().info("All local workers terminated; unregistering node dispatcher");
+            this.self().tell(PoisonPill.getInstance(), ActorRef.noSender());
+            return;
+        }
+        this.dispatch();
+    }
+
+    private void dispatch() {
+        while (!this.idleWorkers.isEmpty() && !this.localWork.isEmpty()) {
+            ActorRef worker = this.idleWorkers.remove();
+            Worker.Workload chunk = this.localWork.remove();
+            worker.tell(chunk, this.self());
+            this.busyWorkers.put(worker, chunk);
+        }
+    }
+
+    private void completeIfDone() {
+        if (this.workload != null && this.localWork.isEmpty() && this.busyWorkers.isEmpty()) {
+            this.master.tell(
+                    new Master.WorkloadCompletedMessage(this.workloadCandidates, System.nanoTime() - this.workloadStartTime),
+                    this.self());
+            this.workload = null;
+        }
+    }
+
+    private void handle(CurrentClusterState message) {
+        message.getMembers().forEach(member -> {
+            if (member.status().equals(MemberStatus.up()))
+                this.register(member);
+        });
+    }
+
+    private void handle(MemberUp message) {
+        this.register(message.member());
+    }
+
+    private void register(Member member) {
+        if ((this.masterSystem == null) && member.hasRole(MasterSystem.MASTER_ROLE)) {
+            this.masterSystem = member;
+
+            this.getContext()
+                    .actorSelection(member.address() + "/user/" + Master.DEFAULT_NAME)
+                    .tell(new Master.RegistrationMessage(this.capacity), this.self());
+        }
+    }
+
+    private void handle(MemberRemoved message) {
+        if (this.masterSystem.equals(message.member())) {
+            this.self().tell(PoisonPill.getInstance(), ActorRef.noSender());
+        }
+    }
+}
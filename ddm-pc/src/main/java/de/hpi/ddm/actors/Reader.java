@@ -5,6 +5,8 @@ import akka.actor.Props;
 import com.opencsv.CSVReader;
 import de.hpi.ddm.configuration.ConfigurationSingleton;
 import de.hpi.ddm.configuration.DatasetDescriptorSingleton;
+import de.hpi.ddm.events.CrackingEvents;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 
 import java.io.Serializable;
@@ -42,6 +44,13 @@ public class Reader extends AbstractLoggingActor {
         private static final long serialVersionUID = -6502012292054496911L;
     }
 
+    @Data
+    @AllArgsConstructor
+    public static class SkipMessage implements Serializable {
+        private static final long serialVersionUID = 2178253468613480315L;
+        private long numRecords;
+    }
+
     /////////////////
     // Actor State //
     /////////////////
@@ -82,6 +91,7 @@ public class Reader extends AbstractLoggingActor {
                 .match(ReadMessage.class, this::handle)
                 .match(InitialInfoRequest.class, this::handle)
                 .match(FinishedReadingRequest.class, this::handle)
+                .match(SkipMessage.class, this::handle)
                 .matchAny(object -> this.log().info("Received unknown message: \"{}\"", object.toString()))
                 .build();
     }
@@ -101,11 +111,34 @@ public class Reader extends AbstractLoggingActor {
         this.read();
     }
 
+    private void handle(SkipMessage message) throws Exception {
+        long remaining = message.getNumRecords();
+
+        int skippedFromBuffer = (int) Math.min(remaining, this.buffer.size());
+        this.buffer.subList(0, skippedFromBuffer).clear();
+        remaining -= skippedFromBuffer;
+
+        while ((remaining > 0) && (this.reader.readNext() != null))
+            remaining--;
+
+        this.fill();
+    }
+
     private void read() throws Exception {
         this.buffer.clear();
+        this.fill();
+    }
+
+    private void fill() throws Exception {
+        CrackingEvents.BatchReadEvent event = new CrackingEvents.BatchReadEvent();
+        event.begin();
+        int previousSize = this.buffer.size();
 
         String[] line;
         while ((this.buffer.size() < this.bufferSize) && ((line = this.reader.readNext()) != null))
             this.buffer.add(line);
+
+        event.records = this.buffer.size() - previousSize;
+        event.commit();
     }
 }
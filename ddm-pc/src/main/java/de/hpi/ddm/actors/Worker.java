@@ -2,6 +2,7 @@ package de.hpi.ddm.actors;
 
 import akka.actor.AbstractLoggingActor;
 import akka.actor.ActorRef;
+import akka.actor.Cancellable;
 import akka.actor.PoisonPill;
 import akka.actor.Props;
 import akka.cluster.Cluster;
@@ -11,19 +12,32 @@ import akka.cluster.ClusterEvent.MemberUp;
 import akka.cluster.Member;
 import akka.cluster.MemberStatus;
 import de.hpi.ddm.MasterSystem;
+import de.hpi.ddm.actors.listeners.MetricsListener;
+import de.hpi.ddm.configuration.ConfigurationSingleton;
+import de.hpi.ddm.events.CrackingEvents;
 import de.hpi.ddm.structures.PasswordInfo;
-import de.hpi.ddm.utils.CombinationsNoRepetition;
-import de.hpi.ddm.utils.CombinationsRepetition;
-import de.hpi.ddm.utils.Permutations;
+import de.hpi.ddm.structures.WorkerStatistics;
+import de.hpi.ddm.utils.RangeCracker;
+import de.hpi.ddm.utils.RangeSearchTask;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.Serializable;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 public class Worker extends AbstractLoggingActor {
 
@@ -33,12 +47,19 @@ public class Worker extends AbstractLoggingActor {
 
     public static final String DEFAULT_NAME = "worker";
 
+    private static final long SLICE_SIZE = 1 << 15;
+    private static final long STEAL_BACKOFF_MILLIS = 200;
+    private static final long STATISTICS_INTERVAL_MILLIS = 3000;
+
     public static Props props() {
         return Props.create(Worker.class);
     }
 
     public Worker() {
         this.cluster = Cluster.get(this.context().system());
+        this.pool = ConfigurationSingleton.get().isParallelWorker()
+                ? new ForkJoinPool(Runtime.getRuntime().availableProcessors())
+                : null;
     }
 
     ////////////////////
@@ -47,12 +68,60 @@ public class Worker extends AbstractLoggingActor {
 
     @Data
     @NoArgsConstructor
-    @AllArgsConstructor
-    public static class Workload implements Serializable {
+    public abstract static class Workload implements RangeCracker.RangeSearch, Serializable {
         private static final long serialVersionUID = -9124610486395741813L;
         private int passwordID;
         private char[] universe;
         private String hash;
+        private long rangeStart;
+        private long rangeEnd;
+        private transient long createdNanos;	// Only meaningful on the creating node
+
+        public Workload(int passwordID, char[] universe, String hash) {
+            this.passwordID = passwordID;
+            this.universe = universe;
+            this.hash = hash;
+            this.createdNanos = System.nanoTime();
+        }
+
+        protected Workload(Workload other) {
+            this(other.passwordID, other.universe, other.hash);
+            this.rangeStart = other.rangeStart;
+            this.rangeEnd = other.rangeEnd;
+            this.createdNanos = other.createdNanos;
+        }
+
+        public long remaining() {
+            return this.rangeEnd - this.rangeStart;
+        }
+
+        /**
+         * Cuts the first candidates off this workload's range.
+         * @return a workload for the first size candidates of the range
+         */
+        public Workload split(long size) {
+            Workload chunk = this.copy();
+            chunk.rangeEnd = this.rangeStart + size;
+            this.rangeStart += size;
+            return chunk;
+        }
+
+        protected abstract Workload copy();
+
+        public abstract long spaceSize();
+
+        /**
+         * @return a short name of the workload's kind for logs, metrics and events
+         */
+        public abstract String type();
+
+        @Override
+        public abstract RangeCracker.Result search(long from, long to);
+
+        /**
+         * @return the message that reports the candidate that matched this workload's hash
+         */
+        public abstract Serializable successMessage(String match);
     }
 
     @EqualsAndHashCode(callSuper = true)
@@ -67,6 +136,39 @@ public class Worker extends AbstractLoggingActor {
             super(passwordID, universe, info.getPasswordHash());
             this.passwordLength = info.getPasswordLength();
             this.numCharsUsedForPassword = info.getNumberOfUniqueCharsUsed();
+            this.setRangeEnd(this.spaceSize());
+        }
+
+        private PasswordWorkload(PasswordWorkload other) {
+            super(other);
+            this.passwordLength = other.passwordLength;
+            this.numCharsUsedForPassword = other.numCharsUsedForPassword;
+        }
+
+        @Override
+        protected Workload copy() {
+            return new PasswordWorkload(this);
+        }
+
+        @Override
+        public long spaceSize() {
+            return RangeCracker.passwordSpaceSize(this.getUniverse(), this.numCharsUsedForPassword, this.passwordLength);
+        }
+
+        @Override
+        public RangeCracker.Result search(long from, long to) {
+            return RangeCracker.searchPasswords(this.getUniverse(), this.numCharsUsedForPassword, this.passwordLength,
+                    RangeCracker.target(this.getHash()), from, to);
+        }
+
+        @Override
+        public String type() {
+            return "password";
+        }
+
+        @Override
+        public Serializable successMessage(String match) {
+            return new Master.PasswordSuccessMessage(this.getPasswordID(), match);
         }
     }
 
@@ -78,15 +180,159 @@ public class Worker extends AbstractLoggingActor {
 
         public HintWorkload(int passwordID, char[] universe, String hash) {
             super(passwordID, universe, hash);
+            this.setRangeEnd(this.spaceSize());
+        }
+
+        private HintWorkload(HintWorkload other) {
+            super(other);
+        }
+
+        @Override
+        protected Workload copy() {
+            return new HintWorkload(this);
+        }
+
+        @Override
+        public long spaceSize() {
+            return RangeCracker.hintSpaceSize(this.getUniverse());
+        }
+
+        @Override
+        public RangeCracker.Result search(long from, long to) {
+            return RangeCracker.searchHints(this.getUniverse(), RangeCracker.target(this.getHash()), from, to);
+        }
+
+        @Override
+        public String type() {
+            return "hint";
+        }
+
+        @Override
+        public Serializable successMessage(String match) {
+            return new Master.HintSuccessMessage(this.getPasswordID(), this.getHash(), match);
         }
     }
 
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SweepMessage implements Serializable {
+        private static final long serialVersionUID = -3129057721364086521L;
+        private Workload workload;
+        private List<ActorRef> participants;
+        private double[] weights;		// The relative hash rates of the participants
+
+        /**
+         * Cuts the workload's range into one contiguous share per participant, sized by the participants' weights.
+         * @return the share of the participant with the given index
+         */
+        public Workload share(int index) {
+            double total = Arrays.stream(this.weights).sum();
+            double before = Arrays.stream(this.weights, 0, index).sum();
+            long start = this.workload.getRangeStart();
+            long span = this.workload.remaining();
+
+            Workload share = this.workload.copy();
+            share.setRangeStart(start + (long) (span * (before / total)));
+            if (index < this.weights.length - 1)
+                share.setRangeEnd(start + (long) (span * ((before + this.weights[index]) / total)));
+            return share;
+        }
+
+        /**
+         * @return the participant's share or null if the participant does not take part in this sweep
+         */
+        public Workload shareOf(ActorRef participant) {
+            int index = this.participants.indexOf(participant);
+            return index < 0 ? null : this.share(index);
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CancelMessage implements Serializable {
+        private static final long serialVersionUID = 7810563214495028163L;
+        private int passwordID;
+        private String hash;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PeersMessage implements Serializable {
+        private static final long serialVersionUID = 4263815036527461207L;
+        private List<ActorRef> peers;
+    }
+
+    @Data
+    public static class NoWorkMessage implements Serializable {
+        private static final long serialVersionUID = -1731564238075902135L;
+    }
+
+    @Data
+    public static class WorkAvailableMessage implements Serializable {
+        private static final long serialVersionUID = 6951230816447420376L;
+    }
+
+    @Data
+    public static class StealRequest implements Serializable {
+        private static final long serialVersionUID = -5106427365298127590L;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class StolenWorkMessage implements Serializable {
+        private static final long serialVersionUID = 2317645906178235413L;
+        private Workload workload;
+    }
+
+    @Data
+    public static class NothingToStealMessage implements Serializable {
+        private static final long serialVersionUID = -6628409510387215926L;
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class ContinueMessage implements Serializable {
+        private static final long serialVersionUID = 8862004173511307245L;
+        private long generation;	// The workload that the message continues; a cancelled workload leaves stale ones behind
+    }
+
+    @Data
+    private static class ReportStatisticsMessage implements Serializable {
+        private static final long serialVersionUID = -2263079411283906613L;
+    }
+
+    @Data
+    private static class StealRetryMessage implements Serializable {
+        private static final long serialVersionUID = 1390857214608431529L;
+    }
+
     /////////////////
     // Actor State //
     /////////////////
 
     private Member masterSystem;
     private final Cluster cluster;
+    private final ForkJoinPool pool;
+
+    private Workload workload;		// The not yet searched rest of the current workload
+    private ActorRef owner;			// The actor that assigned the current workload
+    private long workloadStartTime;
+    private long workloadCandidates;
+    private long workloadGeneration;
+    private CrackingEvents.WorkloadExecutedEvent workloadEvent;
+
+    private ActorRef master;
+    private List<ActorRef> peers = Collections.emptyList();
+    private boolean stealing;
+    private int stealAttempts;
+
+    private final WorkerStatistics statistics = new WorkerStatistics();
+    private ObjectName statisticsName;
+    private Cancellable statisticsReport;
 
     /////////////////////
     // Actor Lifecycle //
@@ -96,11 +342,34 @@ public class Worker extends AbstractLoggingActor {
     public void preStart() {
         Reaper.watchWithDefaultReaper(this);
         this.cluster.subscribe(this.self(), MemberUp.class, MemberRemoved.class);
+
+        try {
+            this.statisticsName = new ObjectName("de.hpi.ddm:type=Worker,name=" + this.self().path().name());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this.statistics, this.statisticsName);
+        } catch (JMException e) {
+            this.log().warning("Could not register the worker statistics MBean: {}", e.getMessage());
+            this.statisticsName = null;
+        }
+
+        FiniteDuration interval = Duration.create(STATISTICS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        this.statisticsReport = this.context().system().scheduler().schedule(interval, interval,
+                this.self(), new ReportStatisticsMessage(), this.context().dispatcher(), this.self());
     }
 
     @Override
     public void postStop() {
         this.cluster.unsubscribe(this.self());
+        if (this.pool != null)
+            this.pool.shutdownNow();
+
+        this.statisticsReport.cancel();
+        if (this.statisticsName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.statisticsName);
+            } catch (JMException e) {
+                this.log().warning("Could not unregister the worker statistics MBean: {}", e.getMessage());
+            }
+        }
     }
 
     ////////////////////
@@ -113,53 +382,167 @@ public class Worker extends AbstractLoggingActor {
                 .match(CurrentClusterState.class, this::handle)
                 .match(MemberUp.class, this::handle)
                 .match(MemberRemoved.class, this::handle)
-                .match(PasswordWorkload.class, this::handle)
-                .match(HintWorkload.class, this::handle)
+                .match(Workload.class, this::handle)
+                .match(SweepMessage.class, this::handle)
+                .match(CancelMessage.class, this::handle)
+                .match(ContinueMessage.class, this::handle)
+                .match(PeersMessage.class, this::handle)
+                .match(NoWorkMessage.class, this::handle)
+                .match(WorkAvailableMessage.class, this::handle)
+                .match(StealRequest.class, this::handle)
+                .match(StolenWorkMessage.class, this::handle)
+                .match(NothingToStealMessage.class, this::handle)
+                .match(StealRetryMessage.class, this::handle)
+                .match(ReportStatisticsMessage.class, this::handle)
                 .matchAny(object -> this.log().info("Received unknown message: \"{}\"", object.toString()))
                 .build();
     }
 
-    private void handle(HintWorkload hintWorkload) {
-        for (String permutation : new Permutations(hintWorkload.getUniverse())) {
-            String sequence = permutation.substring(0, permutation.length() - 1);
-            String hash = getHash(sequence);
-            if (hash.equals(hintWorkload.getHash())) {
-                this.sender().tell(
-                        new Master.HintSuccessMessage(hintWorkload.getPasswordID(), sequence),
-                        this.self());
-                return;
-            }
+    private void handle(Workload message) {
+        this.start(message, this.sender());
+    }
+
+    private void handle(SweepMessage message) {
+        Workload share = message.shareOf(this.self());
+        if (share != null)
+            this.start(share, this.sender());
+    }
+
+    private void handle(CancelMessage message) {
+        if (this.workload != null && this.workload.getPasswordID() == message.getPasswordID()
+                && this.workload.getHash().equals(message.getHash()))
+            this.complete();
+    }
+
+    private void start(Workload workload, ActorRef owner) {
+        // The range is searched slice by slice so that steal requests are answered in between; the
+        // assigning actor keeps the received workload for its bookkeeping, so only a copy is shrunk
+        this.workload = workload.copy();
+        this.owner = owner;
+        this.workloadStartTime = System.nanoTime();
+        this.workloadCandidates = 0;
+        this.workloadGeneration++;
+        this.workloadEvent = CrackingEvents.beginWorkload(workload.getPasswordID(), workload.type(), workload.remaining());
+        this.self().tell(new ContinueMessage(this.workloadGeneration), this.self());
+    }
+
+    private void handle(ContinueMessage message) {
+        if (this.workload == null || message.getGeneration() != this.workloadGeneration)
+            return;
+
+        long sliceEnd = Math.min(this.workload.getRangeEnd(), this.workload.getRangeStart() + this.sliceSize());
+        long sliceStartTime = System.nanoTime();
+        RangeCracker.Result result = this.search(this.workload, this.workload.getRangeStart(), sliceEnd);
+        this.statistics.recordSearch(this.workload instanceof HintWorkload, result.getCandidates(), System.nanoTime() - sliceStartTime);
+        this.workloadCandidates += result.getCandidates();
+        this.workload.setRangeStart(sliceEnd);
+
+        if (result.getMatch() != null) {
+            this.owner.tell(this.workload.successMessage(result.getMatch()), this.self());
+            this.complete();
+        } else if (this.workload.remaining() <= 0) {
+            this.complete();
+        } else {
+            this.self().tell(message, this.self());
         }
     }
 
-    private void handle(PasswordWorkload passwordWorkload) {
-        CombinationsNoRepetition charCombinationIterator = new CombinationsNoRepetition(
-                passwordWorkload.getUniverse(),
-                passwordWorkload.getNumCharsUsedForPassword());
+    private void complete() {
+        this.owner.tell(
+                new Master.WorkloadCompletedMessage(this.workloadCandidates, System.nanoTime() - this.workloadStartTime),
+                this.self());
+        this.statistics.recordCompletion(this.workload instanceof HintWorkload);
+        CrackingEvents.workloadExecuted(this.workloadEvent, this.workloadCandidates);
+        this.workload = null;
+    }
 
-        for (String charCombination : charCombinationIterator) {
-            if (checkHashesForCharCombination(passwordWorkload, charCombination.toCharArray())) {
-                return;
-            }
+    private void handle(ReportStatisticsMessage message) {
+        if (this.masterSystem == null)
+            return;
+
+        this.getContext()
+                .actorSelection(this.masterSystem.address() + "/user/" + MetricsListener.DEFAULT_NAME)
+                .tell(new MetricsListener.WorkerStatisticsMessage(this.statistics.getCandidatesHashed(),
+                        this.statistics.getBusyNanos(), this.statistics.getUptimeNanos()), this.self());
+    }
+
+    private long sliceSize() {
+        return this.pool == null ? SLICE_SIZE : SLICE_SIZE * this.pool.getParallelism();
+    }
+
+    private RangeCracker.Result search(Workload workload, long from, long to) {
+        if (this.pool == null)
+            return workload.search(from, to);
+
+        return this.pool.invoke(new RangeSearchTask(workload, from, to));
+    }
+
+    private void handle(PeersMessage message) {
+        this.peers = new ArrayList<>(message.getPeers());
+        this.peers.remove(this.self());
+    }
+
+    private void handle(NoWorkMessage message) {
+        this.master = this.sender();
+        this.stealing = true;
+        this.stealAttempts = 0;
+        this.steal();
+    }
+
+    private void handle(WorkAvailableMessage message) {
+        if (this.stealing) {
+            this.stealing = false;
+            this.sender().tell(new Master.ReadyMessage(), this.self());
         }
     }
 
-    private boolean checkHashesForCharCombination(PasswordWorkload workload, char[] charsToUse) {
-        CombinationsRepetition pwCombinationIterator = new CombinationsRepetition(
-                charsToUse, workload.getPasswordLength());
+    private void steal() {
+        if (!this.stealing)
+            return;
+
+        if (this.stealAttempts >= this.peers.size()) {
+            // Every peer has been asked once, so wait before the next round instead of flooding the busy ones
+            this.stealAttempts = 0;
+            this.context().system().scheduler().scheduleOnce(
+                    Duration.create(STEAL_BACKOFF_MILLIS, TimeUnit.MILLISECONDS),
+                    this.self(), new StealRetryMessage(), this.context().dispatcher(), this.self());
+            return;
+        }
+        this.stealAttempts++;
+        ActorRef victim = this.peers.get(ThreadLocalRandom.current().nextInt(this.peers.size()));
+        victim.tell(new StealRequest(), this.self());
+    }
 
-        for (String combination : pwCombinationIterator) {
-            String hash = getHash(combination);
-            if (hash.equals(workload.getHash())) {
-                this.sender().tell(
-                        new Master.PasswordSuccessMessage(workload.getPasswordID(), combination),
-                        this.self());
-                return true;
-            }
+    private void handle(StealRequest message) {
+        if (this.workload == null || this.workload.remaining() < 2 * this.sliceSize()) {
+            this.sender().tell(new NothingToStealMessage(), this.self());
+            return;
         }
-        return false;
+        long middle = this.workload.getRangeStart() + this.workload.remaining() / 2;
+        Workload stolen = this.workload.copy();
+        stolen.setRangeStart(middle);
+        this.workload.setRangeEnd(middle);
+        this.sender().tell(new StolenWorkMessage(stolen), this.self());
+    }
+
+    private void handle(StolenWorkMessage message) {
+        if (!this.stealing || this.workload != null) {
+            // The master has handed out new work in the meantime, so it gets the stolen range back
+            this.master.tell(new Master.ReturnWorkMessage(message.getWorkload()), this.self());
+            return;
+        }
+        this.stealing = false;
+        this.master.tell(new Master.WorkStolenMessage(this.sender(), message.getWorkload()), this.self());
+        this.start(message.getWorkload(), this.master);
+    }
+
+    private void handle(NothingToStealMessage message) {
+        this.steal();
     }
 
+    private void handle(StealRetryMessage message) {
+        this.steal();
+    }
 
     private void handle(CurrentClusterState message) {
         message.getMembers().forEach(member -> {
@@ -176,8 +559,11 @@ public class Worker extends AbstractLoggingActor {
         if ((this.masterSystem == null) && member.hasRole(MasterSystem.MASTER_ROLE)) {
             this.masterSystem = member;
 
+            String registrar = ConfigurationSingleton.get().isNodeDispatcher()
+                    ? "/user/" + NodeDispatcher.DEFAULT_NAME
+                    : member.address() + "/user/" + Master.DEFAULT_NAME;
             this.getContext()
-                    .actorSelection(member.address() + "/user/" + Master.DEFAULT_NAME)
+                    .actorSelection(registrar)
                     .tell(new Master.RegistrationMessage(), this.self());
         }
     }
@@ -187,19 +573,4 @@ public class Worker extends AbstractLoggingActor {
             this.self().tell(PoisonPill.getInstance(), ActorRef.noSender());
         }
     }
-
-    private String getHash(String line) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hashedBytes = digest.digest(String.valueOf(line).getBytes(StandardCharsets.UTF_8));
-
-            StringBuilder stringBuilder = new StringBuilder();
-            for (byte hashedByte : hashedBytes) {
-                stringBuilder.append(Integer.toString((hashedByte & 0xff) + 0x100, 16).substring(1));
-            }
-            return stringBuilder.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e.getMessage());
-        }
-    }
-}
\ No newline at end of file
+}
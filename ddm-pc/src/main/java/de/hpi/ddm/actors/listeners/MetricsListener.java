@@ -1,7 +1,10 @@
 package de.hpi.ddm.actors.listeners;
 
 import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Address;
 import akka.actor.Props;
+import akka.actor.Terminated;
 import akka.cluster.Cluster;
 import akka.cluster.ClusterEvent.CurrentClusterState;
 import akka.cluster.metrics.ClusterMetricsChanged;
@@ -12,6 +15,15 @@ import akka.cluster.metrics.StandardMetrics.Cpu;
 import akka.cluster.metrics.ClusterMetricsExtension;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
+import de.hpi.ddm.actors.Master;
+import de.hpi.ddm.structures.MetricsRegistry;
+import de.hpi.ddm.structures.MetricsRegistrySingleton;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.*;
 
 public class MetricsListener extends AbstractActor {
 
@@ -22,7 +34,27 @@ public class MetricsListener extends AbstractActor {
 	public static final String DEFAULT_NAME = "metricsListener";
 
 	public static Props props() {
-		return Props.create(MetricsListener.class);
+		return Props.create(MetricsListener.class, () -> new MetricsListener(null));
+	}
+
+	public static Props props(final ActorRef master) {
+		return Props.create(MetricsListener.class, () -> new MetricsListener(master));
+	}
+
+	public MetricsListener(final ActorRef master) {
+		this.master = master;
+	}
+
+	////////////////////
+	// Actor Messages //
+	////////////////////
+
+	@Data @NoArgsConstructor @AllArgsConstructor
+	public static class WorkerStatisticsMessage implements Serializable {
+		private static final long serialVersionUID = -5283047104476937142L;
+		private long candidatesHashed;
+		private long busyNanos;
+		private long uptimeNanos;
 	}
 
 	/////////////////
@@ -32,6 +64,11 @@ public class MetricsListener extends AbstractActor {
 	private final LoggingAdapter log = Logging.getLogger(getContext().system(), this);
 	private final Cluster cluster = Cluster.get(getContext().system());
 	private final ClusterMetricsExtension extension = ClusterMetricsExtension.get(getContext().system());
+	private final ActorRef master;
+	
+	private final Map<ActorRef, WorkerStatisticsMessage> workerStatistics = new HashMap<>();
+	private final Map<Address, Long> loggedCandidates = new HashMap<>();
+	private long loggedTime = System.nanoTime();
 
 	/////////////////////
 	// Actor Lifecycle //
@@ -55,17 +92,119 @@ public class MetricsListener extends AbstractActor {
 	public Receive createReceive() {
 		return receiveBuilder()
 			.match(ClusterMetricsChanged.class, this::logMetrics)
+			.match(WorkerStatisticsMessage.class, this::handle)
+			.match(Terminated.class, this::handle)
 			.match(CurrentClusterState.class, message -> {/*Ignore*/})
 			.build();
 	}
 	
+	private void handle(WorkerStatisticsMessage message) {
+		WorkerStatisticsMessage previous = this.workerStatistics.put(this.sender(), message);
+		if (previous == null)
+			this.getContext().watch(this.sender());
+		
+		String worker = this.workerName(this.sender());
+		MetricsRegistry metrics = MetricsRegistrySingleton.get();
+		metrics.counter("ddm_worker_candidates_total", "Candidates hashed by the worker", "worker", worker, message.getCandidatesHashed());
+		if (previous != null && message.getUptimeNanos() > previous.getUptimeNanos()) {
+			double seconds = (message.getUptimeNanos() - previous.getUptimeNanos()) / 1_000_000_000.0;
+			metrics.gauge("ddm_worker_hashes_per_second", "Hash rate of the worker since its previous report", "worker", worker,
+					(message.getCandidatesHashed() - previous.getCandidatesHashed()) / seconds);
+			metrics.gauge("ddm_worker_busy_ratio", "Share of the time since its previous report that the worker spent searching", "worker", worker,
+					(message.getBusyNanos() - previous.getBusyNanos()) / (seconds * 1_000_000_000.0));
+		}
+	}
+	
+	private void handle(Terminated message) {
+		ActorRef worker = message.getActor();
+		WorkerStatisticsMessage statistics = this.workerStatistics.remove(worker);
+		if (statistics == null)
+			return;
+		
+		// The node's next rate still counts what the worker hashed since the last log, but no longer its total
+		Address node = this.nodeOf(worker);
+		if (this.workerStatistics.keySet().stream().anyMatch(other -> this.nodeOf(other).equals(node)))
+			this.loggedCandidates.computeIfPresent(node, (key, logged) -> logged - statistics.getCandidatesHashed());
+		else
+			this.loggedCandidates.remove(node);
+		
+		MetricsRegistry metrics = MetricsRegistrySingleton.get();
+		metrics.remove("ddm_worker_candidates_total", "worker", this.workerName(worker));
+		metrics.remove("ddm_worker_hashes_per_second", "worker", this.workerName(worker));
+		metrics.remove("ddm_worker_busy_ratio", "worker", this.workerName(worker));
+	}
+	
+	private String workerName(ActorRef worker) {
+		return worker.path().toStringWithAddress(this.cluster.selfAddress());
+	}
+	
+	private Address nodeOf(ActorRef worker) {
+		Address address = worker.path().address();
+		return address.hasGlobalScope() ? address : this.cluster.selfAddress();
+	}
+	
 	private void logMetrics(ClusterMetricsChanged clusterMetrics) {
 		for (NodeMetrics nodeMetrics : clusterMetrics.getNodeMetrics()) {
 			if (nodeMetrics.address().equals(this.cluster.selfAddress())) {
 				this.logHeap(nodeMetrics);
 				this.logCpu(nodeMetrics);
 			}
+			if (this.master != null)
+				this.reportLoad(nodeMetrics);
+		}
+		this.logWorkerStatistics();
+	}
+
+	private void logWorkerStatistics() {
+		if (this.workerStatistics.isEmpty())
+			return;
+		
+		Map<Address, List<WorkerStatisticsMessage>> nodes = new TreeMap<>(Comparator.comparing(Address::toString));
+		this.workerStatistics.forEach((worker, statistics) ->
+				nodes.computeIfAbsent(this.nodeOf(worker), key -> new ArrayList<>()).add(statistics));
+		
+		long now = System.nanoTime();
+		double seconds = (now - this.loggedTime) / 1_000_000_000.0;
+		this.loggedTime = now;
+		
+		double clusterRate = 0;
+		for (Map.Entry<Address, List<WorkerStatisticsMessage>> node : nodes.entrySet()) {
+			long candidates = node.getValue().stream().mapToLong(WorkerStatisticsMessage::getCandidatesHashed).sum();
+			long busyNanos = node.getValue().stream().mapToLong(WorkerStatisticsMessage::getBusyNanos).sum();
+			long uptimeNanos = node.getValue().stream().mapToLong(WorkerStatisticsMessage::getUptimeNanos).sum();
+			
+			Long previous = this.loggedCandidates.put(node.getKey(), candidates);
+			double rate = (candidates - (previous == null ? 0 : previous)) / seconds;
+			clusterRate += rate;
+			
+			this.log.info("Node {}: {} workers, {} hashes/s, {}% busy",
+					node.getKey(), node.getValue().size(), (long) rate, uptimeNanos == 0 ? 0 : 100 * busyNanos / uptimeNanos);
+		}
+		this.log.info("Cluster: {} hashes/s on {} nodes", (long) clusterRate, nodes.size());
+	}
+
+	private void reportLoad(NodeMetrics nodeMetrics) {
+		double loadPerProcessor = 0;
+		Cpu cpu = StandardMetrics.extractCpu(nodeMetrics);
+		if (cpu != null && cpu.systemLoadAverage().isDefined())
+			loadPerProcessor = ((Double) cpu.systemLoadAverage().get()) / cpu.processors();
+
+		double heapUsage = 0;
+		HeapMemory heap = StandardMetrics.extractHeapMemory(nodeMetrics);
+		if (heap != null) {
+			long limit = heap.max().isDefined() ? (Long) heap.max().get() : heap.committed();
+			heapUsage = ((double) heap.used()) / limit;
+		}
+		
+		String node = nodeMetrics.address().toString();
+		MetricsRegistry metrics = MetricsRegistrySingleton.get();
+		metrics.gauge("ddm_node_load_per_processor", "System load average per processor of the node", "node", node, loadPerProcessor);
+		if (heap != null) {
+			metrics.gauge("ddm_node_heap_used_bytes", "Heap memory used on the node", "node", node, heap.used());
+			metrics.gauge("ddm_node_heap_usage_ratio", "Used heap relative to the node's maximum heap", "node", node, heapUsage);
 		}
+
+		this.master.tell(new Master.NodeMetricsMessage(nodeMetrics.address(), loadPerProcessor, heapUsage), this.self());
 	}
 
 	private void logHeap(NodeMetrics nodeMetrics) {
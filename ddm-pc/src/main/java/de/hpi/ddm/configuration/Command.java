@@ -14,5 +14,11 @@ public abstract class Command {
 
 	@Parameter(names = { "-w", "--numWorkers" }, description = "The number of workers (indexers/validators) to start locally; should be at least one if the algorithm is started standalone (otherwise there are no workers to run the discovery)", required = false)
 	int numWorkers = ConfigurationSingleton.get().getNumWorkers();
+
+	@Parameter(names = { "-pw", "--parallelWorker" }, description = "Start a single worker that cracks its workloads on all local cores instead of numWorkers single-threaded workers", required = false)
+	boolean parallelWorker = ConfigurationSingleton.get().isParallelWorker();
+
+	@Parameter(names = { "-nd", "--nodeDispatcher" }, description = "Start a node-local dispatcher that registers with the master once, splits its workloads among the local workers and aggregates their results", required = false)
+	boolean nodeDispatcher = ConfigurationSingleton.get().isNodeDispatcher();
 	
 }
@@ -0,0 +1,15 @@
+package de.hpi.ddm.configuration;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.ParametersDelegate;
+
+@Parameters(commandDescription = "crack a dataset within this JVM without starting an actor system")
+public class CommandLocal {
+
+	@Parameter(names = { "-w", "--numWorkers" }, description = "The number of threads that crack the dataset", required = false)
+	int numWorkers = Runtime.getRuntime().availableProcessors();
+
+	@ParametersDelegate
+	DatasetParameters dataset = new DatasetParameters();
+}
@@ -1,9 +1,8 @@
 package de.hpi.ddm.configuration;
 
-import java.nio.charset.Charset;
-
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
+import com.beust.jcommander.ParametersDelegate;
 
 @Parameters(commandDescription = "start a master actor system")
 public class CommandMaster extends Command {
@@ -18,39 +17,37 @@ public class CommandMaster extends Command {
 
 	@Parameter(names = { "-bs", "--bufferSize" }, description = "Buffer for input reading (the DatasetReader pre-fetches and buffers this many records)", required = false)
 	int bufferSize = ConfigurationSingleton.get().getBufferSize();
-	
-	// DatasetDescriptor
-	
-	@Parameter(names = { "-dn", "--datasetName" }, description = "Dataset name", required = false)
-	String datasetName = DatasetDescriptorSingleton.get().getDatasetName();
 
-	@Parameter(names = { "-dp", "--datasetPath" }, description = "Dataset path", required = false)
-	String datasetPath = DatasetDescriptorSingleton.get().getDatasetPath();
+	@Parameter(names = { "-ws", "--workStealing" }, description = "Let workers that find no unassigned work steal half of the remaining range of a random busy peer; not combined with node dispatchers", required = false)
+	boolean workStealing = ConfigurationSingleton.get().isWorkStealing();
 
-	@Parameter(names = { "-de", "--datasetEnding" }, description = "Dataset ending", required = false)
-	String datasetEnding = DatasetDescriptorSingleton.get().getDatasetEnding();
+	@Parameter(names = { "-ss", "--staticSweep" }, description = "Hand each workload to all workers at once as soon as all of them are idle, each of which searches a contiguous share weighted by its hash rate; idle workers steal from busy ones at the end of a sweep", required = false)
+	boolean staticSweep = ConfigurationSingleton.get().isStaticSweep();
 
-	@Parameter(names = { "-fh", "--fileHasHeader" }, description = "File has header as defined by the input data", required = false)
-	boolean fileHasHeader = DatasetDescriptorSingleton.get().isFileHasHeader();
+	@Parameter(names = { "-cm", "--chunkMillis" }, description = "The time that a worker should need for one chunk of candidates given its measured hash rate and its node's load", required = false)
+	long chunkMillis = ConfigurationSingleton.get().getChunkMillis();
 
-	@Parameter(names = { "-cs", "--charset" }, description = "Charset as defined by the input data", required = false)
-	Charset charset = DatasetDescriptorSingleton.get().getCharset();
+	@Parameter(names = { "-jp", "--journalPath" }, description = "File that journals all cracked hints and passwords so that a crashed run can be resumed", required = false)
+	String journalPath = ConfigurationSingleton.get().getJournalPath();
 
-	@Parameter(names = { "-vs", "--valueSeparator" }, description = "Value separator as defined by the input data", required = false)
-	char attributeSeparator = DatasetDescriptorSingleton.get().getValueSeparator();
+	@Parameter(names = { "-r", "--resume" }, description = "Replay the journal of a previous run and skip all work that it has already solved", required = false)
+	boolean resume = ConfigurationSingleton.get().isResume();
 
-	@Parameter(names = { "-vq", "--valueQuote" }, description = "Value quote as defined by the input data", required = false)
-	char attributeQuote = DatasetDescriptorSingleton.get().getValueQuote();
+	@Parameter(names = { "-ht", "--hintTablePath" }, description = "Directory of the precomputed hint lookup tables; a missing table is built once per universe and then used instead of brute-forcing hints", required = false)
+	String hintTablePath = ConfigurationSingleton.get().getHintTablePath();
 
-	@Parameter(names = { "-ve", "--valueEscape" }, description = "Value escape as defined by the input data", required = false)
-	char attributeEscape = DatasetDescriptorSingleton.get().getValueEscape();
+	@Parameter(names = { "-sc", "--solvedCachePath" }, description = "File of the cross-run cache of already cracked hashes that is consulted before any work is scheduled", required = false)
+	String solvedCachePath = ConfigurationSingleton.get().getSolvedCachePath();
 
-	@Parameter(names = { "-vsq", "--valueStrictQuotes" }, description = "Value strict quotes as defined by the input data", required = false)
-	boolean attributeStrictQuotes = DatasetDescriptorSingleton.get().isValueStrictQuotes();
+	@Parameter(names = { "-scs", "--solvedCacheSize" }, description = "Maximum number of hashes in the solved-hash cache; the least recently used hashes are evicted first", required = false)
+	int solvedCacheSize = ConfigurationSingleton.get().getSolvedCacheSize();
 
-	@Parameter(names = { "-viw", "--valueIgnoreLeadingWhitespace" }, description = "Ignore i.e. delete all whitespaces preceding any read value ", required = false)
-	boolean attributeIgnoreLeadingWhitespace = DatasetDescriptorSingleton.get().isValueIgnoreLeadingWhitespace();
+	@Parameter(names = { "-stp", "--statusPort" }, description = "Port of an HTTP endpoint that serves scheduler, throughput and heap metrics at /metrics in the Prometheus text format; 0 disables the endpoint", required = false)
+	int statusPort = ConfigurationSingleton.get().getStatusPort();
 
-	@Parameter(names = { "-rsdl", "--readerSkipDifferingLines" }, description = "True if the reader should skip lines in the input that have a different length as the first line", required = false)
-	boolean readerSkipDifferingLines = DatasetDescriptorSingleton.get().isReaderSkipDifferingLines();
+	@Parameter(names = { "-lr", "--latencyReportPath" }, description = "File to which the p50/p99/max latencies of the workload lifecycle phases are written as JSON at the end of the run", required = false)
+	String latencyReportPath = ConfigurationSingleton.get().getLatencyReportPath();
+	
+	@ParametersDelegate
+	DatasetParameters dataset = new DatasetParameters();
 }
@@ -0,0 +1,21 @@
+package de.hpi.ddm.configuration;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.ParametersDelegate;
+
+@Parameters(commandDescription = "estimate the candidates and the wall time of cracking a dataset without cracking it")
+public class CommandPlan {
+
+	@Parameter(names = { "-w", "--numWorkers" }, description = "The number of threads per node that the hash rate is calibrated with", required = false)
+	int numWorkers = Runtime.getRuntime().availableProcessors();
+
+	@Parameter(names = { "-n", "--numNodes" }, description = "The number of equally fast nodes to estimate the wall time for", required = false)
+	int numNodes = ConfigurationSingleton.get().getNumNodes();
+
+	@Parameter(names = { "-ct", "--calibrationMillis" }, description = "The time that each hash kernel is calibrated for", required = false)
+	long calibrationMillis = ConfigurationSingleton.get().getCalibrationMillis();
+
+	@ParametersDelegate
+	DatasetParameters dataset = new DatasetParameters();
+}
@@ -21,10 +21,42 @@ public class Configuration {
 	
 	private int numWorkers = 4;						// The number of workers to start locally; should be at least one if the algorithm is started standalone (otherwise there are no workers to run the application)
 	
+	private boolean parallelWorker = false;			// Start a single worker that cracks its workloads on all local cores instead of numWorkers single-threaded workers
+	
+	private boolean nodeDispatcher = false;			// Start a node-local dispatcher that registers with the master once, splits its workloads among the local workers and aggregates their results
+	
 	private boolean startPaused = false;			// Wait for some console input to start; useful, if we want to wait manually until all ActorSystems in the cluster are started (e.g. to avoid work stealing effects in performance evaluations)
 	
 	private int bufferSize = 50; 					// Buffer for input reading (the DatasetReader pre-fetches and buffers this many records)
 	
+	private boolean workStealing = false;			// Let workers that find no unassigned work steal half of the remaining range of a random busy peer
+	
+	private boolean staticSweep = false;			// Hand each workload to all workers at once as soon as all of them are idle, each of which searches a contiguous share weighted by its hash rate
+	
+	private long chunkMillis = 1000;				// The time that a worker should need for one chunk of candidates given its measured hash rate and its node's load
+	
+	private String journalPath = "checkpoint.journal";	// The file that journals all cracked hints and passwords so that a crashed run can be resumed
+	
+	private boolean resume = false;					// Replay the journal of a previous run and skip all work that it has already solved
+	
+	private String hintTablePath = null;			// Directory of the precomputed hint lookup tables; hints are brute-forced if no directory is given
+	
+	private String solvedCachePath = null;			// File of the cross-run cache of already cracked hashes; no cache is used if no file is given
+	
+	private int solvedCacheSize = 1000000;			// Maximum number of hashes in the solved-hash cache; the least recently used hashes are evicted first
+	
+	private int statusPort = 0;						// Port of the HTTP endpoint that serves Prometheus metrics at /metrics; no endpoint is started if the port is 0
+	
+	private String latencyReportPath = null;		// File to which the workload latency histograms are written as JSON at the end; they are only logged if no file is given
+	
+	private int numNodes = 1;						// The number of nodes that a plan estimates the wall time for
+	
+	private long calibrationMillis = 1000;			// The time that a plan measures the local hash rate of each hash kernel for
+	
+	public int getNumLocalWorkers() {
+		return this.parallelWorker ? Math.min(1, this.numWorkers) : this.numWorkers;
+	}
+	
 	private static String getDefaultHost() {
         try {
             return InetAddress.getLocalHost().getHostAddress();
@@ -37,8 +69,30 @@ public class Configuration {
 		this.host = commandMaster.host;
 		this.port = commandMaster.port;
 		this.numWorkers = commandMaster.numWorkers;
+		this.parallelWorker = commandMaster.parallelWorker;
+		this.nodeDispatcher = commandMaster.nodeDispatcher;
 		this.startPaused = commandMaster.startPaused;
 		this.bufferSize = commandMaster.bufferSize;
+		this.workStealing = commandMaster.workStealing;
+		this.staticSweep = commandMaster.staticSweep;
+		this.chunkMillis = commandMaster.chunkMillis;
+		this.journalPath = commandMaster.journalPath;
+		this.resume = commandMaster.resume;
+		this.hintTablePath = commandMaster.hintTablePath;
+		this.solvedCachePath = commandMaster.solvedCachePath;
+		this.solvedCacheSize = commandMaster.solvedCacheSize;
+		this.latencyReportPath = commandMaster.latencyReportPath;
+		this.statusPort = commandMaster.statusPort;
+	}
+
+	public void update(CommandLocal commandLocal) {
+		this.numWorkers = commandLocal.numWorkers;
+	}
+
+	public void update(CommandPlan commandPlan) {
+		this.numWorkers = commandPlan.numWorkers;
+		this.numNodes = commandPlan.numNodes;
+		this.calibrationMillis = commandPlan.calibrationMillis;
 	}
 
 	public void update(CommandSlave commandSlave) {
@@ -47,5 +101,7 @@ public class Configuration {
 		this.masterHost = commandSlave.masterhost;
 		this.masterPort = commandSlave.masterport;
 		this.numWorkers = commandSlave.numWorkers;
+		this.parallelWorker = commandSlave.parallelWorker;
+		this.nodeDispatcher = commandSlave.nodeDispatcher;
 	}
 }
@@ -47,17 +47,29 @@ public class DatasetDescriptor implements Serializable {
 	}
 
 	public void update(CommandMaster commandMaster) {
-		this.datasetName = commandMaster.datasetName;
-		this.datasetPath = commandMaster.datasetPath;
-		this.datasetEnding = commandMaster.datasetEnding;
-		this.fileHasHeader = commandMaster.fileHasHeader;
-		this.charset = commandMaster.charset;
-		this.valueSeparator = commandMaster.attributeSeparator;
-		this.valueQuote = commandMaster.attributeQuote;
-		this.valueEscape = commandMaster.attributeEscape;
-		this.valueStrictQuotes = commandMaster.attributeStrictQuotes;
-		this.valueIgnoreLeadingWhitespace = commandMaster.attributeIgnoreLeadingWhitespace;
-		this.readerSkipDifferingLines = commandMaster.readerSkipDifferingLines;
+		this.update(commandMaster.dataset);
+	}
+
+	public void update(CommandLocal commandLocal) {
+		this.update(commandLocal.dataset);
+	}
+
+	public void update(CommandPlan commandPlan) {
+		this.update(commandPlan.dataset);
+	}
+
+	private void update(DatasetParameters datasetParameters) {
+		this.datasetName = datasetParameters.datasetName;
+		this.datasetPath = datasetParameters.datasetPath;
+		this.datasetEnding = datasetParameters.datasetEnding;
+		this.fileHasHeader = datasetParameters.fileHasHeader;
+		this.charset = datasetParameters.charset;
+		this.valueSeparator = datasetParameters.attributeSeparator;
+		this.valueQuote = datasetParameters.attributeQuote;
+		this.valueEscape = datasetParameters.attributeEscape;
+		this.valueStrictQuotes = datasetParameters.attributeStrictQuotes;
+		this.valueIgnoreLeadingWhitespace = datasetParameters.attributeIgnoreLeadingWhitespace;
+		this.readerSkipDifferingLines = datasetParameters.readerSkipDifferingLines;
 	}
 
 	public CSVReader createCSVReader() throws IOException {
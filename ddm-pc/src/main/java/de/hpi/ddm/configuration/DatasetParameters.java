@@ -0,0 +1,41 @@
+package de.hpi.ddm.configuration;
+
+import java.nio.charset.Charset;
+
+import com.beust.jcommander.Parameter;
+
+public class DatasetParameters {
+
+	@Parameter(names = { "-dn", "--datasetName" }, description = "Dataset name", required = false)
+	String datasetName = DatasetDescriptorSingleton.get().getDatasetName();
+
+	@Parameter(names = { "-dp", "--datasetPath" }, description = "Dataset path", required = false)
+	String datasetPath = DatasetDescriptorSingleton.get().getDatasetPath();
+
+	@Parameter(names = { "-de", "--datasetEnding" }, description = "Dataset ending", required = false)
+	String datasetEnding = DatasetDescriptorSingleton.get().getDatasetEnding();
+
+	@Parameter(names = { "-fh", "--fileHasHeader" }, description = "File has header as defined by the input data", required = false)
+	boolean fileHasHeader = DatasetDescriptorSingleton.get().isFileHasHeader();
+
+	@Parameter(names = { "-cs", "--charset" }, description = "Charset as defined by the input data", required = false)
+	Charset charset = DatasetDescriptorSingleton.get().getCharset();
+
+	@Parameter(names = { "-vs", "--valueSeparator" }, description = "Value separator as defined by the input data", required = false)
+	char attributeSeparator = DatasetDescriptorSingleton.get().getValueSeparator();
+
+	@Parameter(names = { "-vq", "--valueQuote" }, description = "Value quote as defined by the input data", required = false)
+	char attributeQuote = DatasetDescriptorSingleton.get().getValueQuote();
+
+	@Parameter(names = { "-ve", "--valueEscape" }, description = "Value escape as defined by the input data", required = false)
+	char attributeEscape = DatasetDescriptorSingleton.get().getValueEscape();
+
+	@Parameter(names = { "-vsq", "--valueStrictQuotes" }, description = "Value strict quotes as defined by the input data", required = false)
+	boolean attributeStrictQuotes = DatasetDescriptorSingleton.get().isValueStrictQuotes();
+
+	@Parameter(names = { "-viw", "--valueIgnoreLeadingWhitespace" }, description = "Ignore i.e. delete all whitespaces preceding any read value ", required = false)
+	boolean attributeIgnoreLeadingWhitespace = DatasetDescriptorSingleton.get().isValueIgnoreLeadingWhitespace();
+
+	@Parameter(names = { "-rsdl", "--readerSkipDifferingLines" }, description = "True if the reader should skip lines in the input that have a different length as the first line", required = false)
+	boolean readerSkipDifferingLines = DatasetDescriptorSingleton.get().isReaderSkipDifferingLines();
+}
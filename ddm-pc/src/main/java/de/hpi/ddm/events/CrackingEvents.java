@@ -0,0 +1,121 @@
+package de.hpi.ddm.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for the reading, scheduling and cracking phases. All events are disabled
+ * unless a recording enables them, e.g., with -XX:StartFlightRecording; the helpers then return right after
+ * the isEnabled() check, so the actors can call them unconditionally.
+ */
+public class CrackingEvents {
+
+    private static final String CATEGORY = "Password Cracking";
+
+    @Name("de.hpi.ddm.BatchRead")
+    @Label("Batch Read")
+    @Description("The reader fills its buffer with the next batch of records")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class BatchReadEvent extends Event {
+        @Label("Records")
+        public int records;
+    }
+
+    @StackTrace(false)
+    abstract static class WorkloadEvent extends Event {
+        @Label("Password ID")
+        public int passwordID;
+
+        @Label("Workload Type")
+        public String workloadType;
+
+        @Label("Range Size")
+        @Description("The number of candidates in the workload's rank range")
+        public long rangeSize;
+    }
+
+    @Name("de.hpi.ddm.WorkloadCreated")
+    @Label("Workload Created")
+    @Category(CATEGORY)
+    public static class WorkloadCreatedEvent extends WorkloadEvent {
+    }
+
+    @Name("de.hpi.ddm.WorkloadAssigned")
+    @Label("Workload Assigned")
+    @Category(CATEGORY)
+    public static class WorkloadAssignedEvent extends WorkloadEvent {
+        @Label("Worker")
+        public String worker;
+    }
+
+    @Name("de.hpi.ddm.WorkloadExecuted")
+    @Label("Workload Executed")
+    @Description("A worker searches the rank range of one workload")
+    @Category(CATEGORY)
+    public static class WorkloadExecutedEvent extends WorkloadEvent {
+        @Label("Candidates")
+        @Description("The number of candidates that were hashed until the workload was completed or cancelled")
+        public long candidates;
+    }
+
+    @Name("de.hpi.ddm.CrackSuccess")
+    @Label("Crack Success")
+    @Category(CATEGORY)
+    public static class CrackSuccessEvent extends WorkloadEvent {
+    }
+
+    public static void workloadCreated(int passwordID, String workloadType, long rangeSize) {
+        WorkloadCreatedEvent event = new WorkloadCreatedEvent();
+        if (event.isEnabled()) {
+            fill(event, passwordID, workloadType, rangeSize);
+            event.commit();
+        }
+    }
+
+    public static void workloadAssigned(int passwordID, String workloadType, long rangeSize, Object worker) {
+        WorkloadAssignedEvent event = new WorkloadAssignedEvent();
+        if (event.isEnabled()) {
+            fill(event, passwordID, workloadType, rangeSize);
+            event.worker = String.valueOf(worker);
+            event.commit();
+        }
+    }
+
+    public static void crackSuccess(int passwordID, String workloadType, long rangeSize) {
+        CrackSuccessEvent event = new CrackSuccessEvent();
+        if (event.isEnabled()) {
+            fill(event, passwordID, workloadType, rangeSize);
+            event.commit();
+        }
+    }
+
+    /**
+     * Starts timing a workload's execution; the returned event is committed with {@link #workloadExecuted}.
+     */
+    public static WorkloadExecutedEvent beginWorkload(int passwordID, String workloadType, long rangeSize) {
+        WorkloadExecutedEvent event = new WorkloadExecutedEvent();
+        if (event.isEnabled()) {
+            fill(event, passwordID, workloadType, rangeSize);
+            event.begin();
+        }
+        return event;
+    }
+
+    public static void workloadExecuted(WorkloadExecutedEvent event, long candidates) {
+        if (event.isEnabled()) {
+            event.candidates = candidates;
+            event.commit();
+        }
+    }
+
+    private static void fill(WorkloadEvent event, int passwordID, String workloadType, long rangeSize) {
+        event.passwordID = passwordID;
+        event.workloadType = workloadType;
+        event.rangeSize = rangeSize;
+    }
+}
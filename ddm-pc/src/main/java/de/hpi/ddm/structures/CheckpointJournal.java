@@ -0,0 +1,180 @@
+package de.hpi.ddm.structures;
+
+import com.google.common.io.CountingInputStream;
+import lombok.Getter;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class CheckpointJournal implements Closeable {
+
+    public static final int DEFAULT_SYNC_INTERVAL = 32;
+
+    private static final byte HINT_RECORD = 1;
+    private static final byte PASSWORD_RECORD = 2;
+    private static final byte OFFSET_RECORD = 3;
+    private static final byte END_RECORD = 4;
+
+    private final FileOutputStream file;
+    private final DataOutputStream out;
+    private final int syncInterval;
+    private int unsyncedRecords;
+
+    /**
+     * Opens the journal for appending; an existing journal is truncated unless it should be resumed, so a journal
+     * that is not resumed should be rotated first.
+     * @param journalFile the file that stores the journal
+     * @param resume true if the existing records should be kept
+     * @param syncInterval number of records after which the journal is forced to disk
+     */
+    public CheckpointJournal(File journalFile, boolean resume, int syncInterval) throws IOException {
+        this.file = new FileOutputStream(journalFile, resume);
+        this.out = new DataOutputStream(new BufferedOutputStream(this.file));
+        this.syncInterval = syncInterval;
+    }
+
+    /**
+     * Moves the non-empty journal of an unfinished run aside under a name with the current time, so that a new run
+     * cannot wipe it; the journal of a finished run is deleted.
+     * @param journalFile the file that stores the journal
+     * @return the file that the journal has been moved to, or null if there was nothing to keep
+     */
+    public static File rotate(File journalFile) throws IOException {
+        if (!journalFile.isFile() || journalFile.length() == 0)
+            return null;
+        if (replay(journalFile).isFinished()) {
+            Files.delete(journalFile.toPath());
+            return null;
+        }
+
+        String name = journalFile.getPath() + "." + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File rotated = new File(name);
+        for (int i = 1; rotated.exists(); i++)
+            rotated = new File(name + "-" + i);
+        Files.move(journalFile.toPath(), rotated.toPath());
+        return rotated;
+    }
+
+    public void appendHint(int passwordID, String hash, String hint) throws IOException {
+        this.out.writeByte(HINT_RECORD);
+        this.out.writeInt(passwordID);
+        this.out.writeUTF(hash);
+        this.out.writeUTF(hint);
+        this.recordWritten();
+    }
+
+    public void appendPassword(int passwordID, String name, String password) throws IOException {
+        this.out.writeByte(PASSWORD_RECORD);
+        this.out.writeInt(passwordID);
+        this.out.writeUTF(name);
+        this.out.writeUTF(password);
+        this.recordWritten();
+    }
+
+    public void appendOffset(long offset) throws IOException {
+        this.out.writeByte(OFFSET_RECORD);
+        this.out.writeLong(offset);
+        this.recordWritten();
+    }
+
+    /**
+     * Marks the run as finished, so that the journal is not kept when the next run starts.
+     */
+    public void appendEnd() throws IOException {
+        this.out.writeByte(END_RECORD);
+        this.recordWritten();
+        this.sync();
+    }
+
+    private void recordWritten() throws IOException {
+        if (++this.unsyncedRecords >= this.syncInterval)
+            this.sync();
+    }
+
+    /**
+     * Flushes all buffered records and forces them to the storage device; does nothing if no record has been
+     * written since the last sync, so it can be called periodically to bound the time records stay unsynced.
+     */
+    public void sync() throws IOException {
+        if (this.unsyncedRecords == 0)
+            return;
+        this.out.flush();
+        this.file.getChannel().force(false);
+        this.unsyncedRecords = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.sync();
+        this.out.close();
+    }
+
+    /**
+     * Reads all complete records of a journal; a record that was torn by a crash ends the replay.
+     * @param journalFile the file that stores the journal
+     * @return the state that has been recorded in the journal
+     */
+    public static Replay replay(File journalFile) throws IOException {
+        Replay replay = new Replay();
+        if (!journalFile.exists())
+            return replay;
+
+        long validLength = 0;
+        try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            DataInputStream in = new DataInputStream(counter);
+            while (true) {
+                byte type = in.readByte();
+                switch (type) {
+                    case HINT_RECORD:
+                        int hintPasswordID = in.readInt();
+                        String hash = in.readUTF();
+                        String hint = in.readUTF();
+                        replay.hints.computeIfAbsent(hintPasswordID, id -> new LinkedHashMap<>()).put(hash, hint);
+                        break;
+                    case PASSWORD_RECORD:
+                        int passwordID = in.readInt();
+                        String name = in.readUTF();
+                        String password = in.readUTF();
+                        replay.passwords.put(passwordID, new String[]{name, password});
+                        break;
+                    case OFFSET_RECORD:
+                        replay.offset = Math.max(replay.offset, in.readLong());
+                        break;
+                    case END_RECORD:
+                        break;
+                    default:
+                        throw new EOFException("Unknown journal record type " + type);
+                }
+                // A resumed run appends to the journal of a finished one, so only the last record counts
+                replay.finished = type == END_RECORD;
+                validLength = counter.getCount();
+            }
+        } catch (EOFException e) {
+            // The journal ends here or with a record that was only partially written
+        }
+
+        if (validLength < journalFile.length()) {
+            try (RandomAccessFile truncated = new RandomAccessFile(journalFile, "rw")) {
+                truncated.setLength(validLength);
+            }
+        }
+        return replay;
+    }
+
+    @Getter
+    public static class Replay {
+        private final Map<Integer, Map<String, String>> hints = new HashMap<>();
+        private final Map<Integer, String[]> passwords = new LinkedHashMap<>();
+        private long offset = 0;
+        private boolean finished = false;
+
+        public boolean isEmpty() {
+            return this.hints.isEmpty() && this.passwords.isEmpty() && this.offset == 0;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package de.hpi.ddm.structures;
+
+import akka.actor.ActorRef;
+import akka.actor.Address;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sizes the chunks of candidates that are handed to workers so that each chunk takes about the same time.
+ * The size follows each worker's measured hash rate and shrinks on nodes whose load or heap usage is high.
+ */
+public class ChunkSizer {
+
+    public static final long INITIAL_CHUNK_SIZE = 1 << 16;
+    public static final long MIN_CHUNK_SIZE = 1 << 10;
+
+    private static final double RATE_SMOOTHING = 0.3;
+    private static final double HEAP_PRESSURE_THRESHOLD = 0.9;
+    private static final double HEAP_PRESSURE_WEIGHT = 0.5;
+
+    private final long chunkMillis;
+    private final Map<ActorRef, Double> hashRates = new HashMap<>();	// Candidates per millisecond
+    private final Map<Address, Double> nodeWeights = new HashMap<>();
+    private final Map<ActorRef, Integer> capacities = new HashMap<>();
+
+    public ChunkSizer(long chunkMillis) {
+        this.chunkMillis = chunkMillis;
+    }
+
+    /**
+     * Updates the worker's hash rate with the duration that it needed for the candidates of its last chunk.
+     */
+    public void recordCompletion(ActorRef worker, long candidates, long executionNanos) {
+        if (candidates <= 0 || executionNanos <= 0)
+            return;
+
+        double rate = candidates / (executionNanos / 1_000_000.0);
+        Double previous = this.hashRates.get(worker);
+        this.hashRates.put(worker, previous == null ? rate : RATE_SMOOTHING * rate + (1 - RATE_SMOOTHING) * previous);
+    }
+
+    /**
+     * Weights a node by its system load per processor and its heap usage; both are ignored if they are unknown.
+     */
+    public void updateNode(Address node, double loadPerProcessor, double heapUsage) {
+        double weight = 1.0;
+        if (loadPerProcessor > 1.0)
+            weight /= loadPerProcessor;
+        if (heapUsage > HEAP_PRESSURE_THRESHOLD)
+            weight *= HEAP_PRESSURE_WEIGHT;
+        this.nodeWeights.put(node, weight);
+    }
+
+    /**
+     * Sets the number of workers that a node-local dispatcher splits its chunks among.
+     */
+    public void setCapacity(ActorRef worker, int capacity) {
+        this.capacities.put(worker, Math.max(1, capacity));
+    }
+
+    public void remove(ActorRef worker) {
+        this.hashRates.remove(worker);
+        this.capacities.remove(worker);
+    }
+
+    public int capacity(ActorRef worker) {
+        return this.capacities.getOrDefault(worker, 1);
+    }
+
+    public boolean hasRate(ActorRef worker) {
+        return this.hashRates.containsKey(worker);
+    }
+
+    /**
+     * @return the measured hash rate of the worker in candidates per second or 0 if it has not completed a chunk yet
+     */
+    public double hashRate(ActorRef worker) {
+        return this.hashRates.getOrDefault(worker, 0.0) * 1000;
+    }
+
+    public double nodeWeight(Address node) {
+        return this.nodeWeights.getOrDefault(node, 1.0);
+    }
+
+    /**
+     * A measured hash rate already reflects the load of the worker's node, so the node's weight only scales the
+     * estimate that stands in for the rate until the worker has completed a chunk.
+     * @return the number of candidates per second that the worker is expected to hash given its node's load
+     */
+    public double effectiveRate(ActorRef worker, Address node) {
+        if (!this.hasRate(worker))
+            return INITIAL_CHUNK_SIZE * this.capacity(worker) * this.nodeWeight(node) * 1000 / Math.max(1, this.chunkMillis);
+
+        return this.hashRate(worker);
+    }
+
+    public long chunkSize(ActorRef worker, Address node) {
+        if (!this.hasRate(worker))
+            return (long) Math.max(MIN_CHUNK_SIZE, INITIAL_CHUNK_SIZE * this.capacity(worker) * this.nodeWeight(node));
+
+        return (long) Math.max(MIN_CHUNK_SIZE, this.effectiveRate(worker, node) * this.chunkMillis / 1000);
+    }
+}
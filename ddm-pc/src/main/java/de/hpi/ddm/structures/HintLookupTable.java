@@ -0,0 +1,215 @@
+package de.hpi.ddm.structures;
+
+import de.hpi.ddm.utils.Hashing;
+import de.hpi.ddm.utils.Permutations;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * A sorted, memory-mapped table that maps truncated SHA-256 digests of all hints of a universe to
+ * the lexicographic ranks of the permutations that produce them. Each entry packs the leading
+ * digest bits and the rank into one long; lookups verify candidates by re-hashing their permutation.
+ */
+public class HintLookupTable {
+
+    private static final long MAGIC = 0x4444_4d48_494e_5431L;
+    private static final int BUILD_BLOCK_SIZE = 1 << 16;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private final char[] universe;
+    private final int rankBits;
+    private final LongBuffer entries;
+
+    private HintLookupTable(char[] universe, int rankBits, LongBuffer entries) {
+        this.universe = universe;
+        this.rankBits = rankBits;
+        this.entries = entries;
+    }
+
+    public static File fileFor(File directory, char[] universe) {
+        return new File(directory, "hints-" + Hashing.sha256Hex(new String(universe)).substring(0, 16) + ".tbl");
+    }
+
+    /**
+     * Opens the table of the universe in the given directory and builds it first if it does not exist or is corrupt.
+     */
+    public static HintLookupTable openOrBuild(File directory, char[] universe) throws IOException {
+        File file = fileFor(directory, universe);
+        if (file.exists()) {
+            try {
+                return open(universe, file);
+            } catch (IOException e) {
+                // Built anew below
+            }
+        }
+        directory.mkdirs();
+        build(universe, file);
+        return open(universe, file);
+    }
+
+    /**
+     * Maps the table in the file.
+     * @throws IOException if the file is not a complete table of the universe
+     */
+    public static HintLookupTable open(char[] universe, File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(headerSize(universe));
+            if (raf.length() < header.capacity())
+                throw new IOException("Hint lookup table " + file + " is truncated");
+            while (header.hasRemaining())
+                channel.read(header, header.position());
+            header.flip();
+
+            if (header.getLong() != MAGIC)
+                throw new IOException("Not a hint lookup table: " + file);
+            char[] storedUniverse = new char[header.getInt()];
+            for (int i = 0; i < storedUniverse.length; i++)
+                storedUniverse[i] = header.getChar();
+            if (!Arrays.equals(storedUniverse, universe))
+                throw new IOException("Hint lookup table " + file + " belongs to universe " + new String(storedUniverse));
+            int rankBits = header.getInt();
+            long count = header.getLong();
+            if (count != Permutations.count(universe.length) || raf.length() != header.capacity() + count * Long.BYTES)
+                throw new IOException("Hint lookup table " + file + " is truncated");
+
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, header.capacity(), count * Long.BYTES);
+            return new HintLookupTable(universe, rankBits, mapped.asLongBuffer());
+        }
+    }
+
+    /**
+     * Hashes all hints of the universe in parallel, sorts the packed entries and writes them to the file. The
+     * entries go to a temporary file first, which replaces the file only once it is complete.
+     */
+    public static void build(char[] universe, File file) throws IOException {
+        long count = Permutations.count(universe.length);
+        // The entries are sorted in one long[] and mapped as one buffer, both of which are limited to 2 GB
+        if (count > Integer.MAX_VALUE / Long.BYTES)
+            throw new IllegalArgumentException("Universe of " + universe.length + " chars is too large for a hint lookup table");
+
+        int rankBits = rankBits(count);
+        long[] entries = new long[(int) count];
+        int numBlocks = (int) ((count + BUILD_BLOCK_SIZE - 1) / BUILD_BLOCK_SIZE);
+
+        IntStream.range(0, numBlocks).parallel().forEach(block -> {
+            MessageDigest digest = Hashing.sha256();
+            int[] indexes = new int[universe.length];
+            char[] hint = new char[universe.length - 1];
+
+            int from = block * BUILD_BLOCK_SIZE;
+            int to = (int) Math.min(count, (long) from + BUILD_BLOCK_SIZE);
+            Permutations.unrank(from, indexes);
+            for (int rank = from; rank < to; rank++) {
+                for (int i = 0; i < hint.length; i++)
+                    hint[i] = universe[indexes[i]];
+                byte[] hash = digest.digest(new String(hint).getBytes(StandardCharsets.UTF_8));
+                entries[rank] = pack(prefix(hash, rankBits), rank, rankBits);
+                Permutations.next(indexes);
+            }
+        });
+        Arrays.parallelSort(entries);
+
+        File temporaryFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try (RandomAccessFile raf = new RandomAccessFile(temporaryFile, "rw"); FileChannel channel = raf.getChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(headerSize(universe), WRITE_BUFFER_SIZE));
+            buffer.putLong(MAGIC);
+            buffer.putInt(universe.length);
+            for (char c : universe)
+                buffer.putChar(c);
+            buffer.putInt(rankBits);
+            buffer.putLong(count);
+
+            for (long entry : entries) {
+                if (buffer.remaining() < Long.BYTES) {
+                    buffer.flip();
+                    while (buffer.hasRemaining())
+                        channel.write(buffer);
+                    buffer.clear();
+                }
+                buffer.putLong(entry);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            temporaryFile.delete();
+            throw e;
+        }
+        try {
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            temporaryFile.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Looks up the hint that hashes to the given SHA-256 hex digest.
+     * @return the hint or null if no permutation of the universe produces the hash
+     */
+    public String lookup(String hintHash) {
+        byte[] target = Hashing.fromHex(hintHash);
+        long prefix = prefix(target, this.rankBits);
+        long rankMask = (1L << this.rankBits) - 1;
+
+        MessageDigest digest = Hashing.sha256();
+        int[] indexes = new int[this.universe.length];
+        char[] hint = new char[this.universe.length - 1];
+
+        for (int position = this.lowerBound(pack(prefix, 0, this.rankBits)); position < this.entries.limit(); position++) {
+            long entry = this.entries.get(position);
+            if ((entry >>> this.rankBits) != prefix)
+                break;
+
+            Permutations.unrank(entry & rankMask, indexes);
+            for (int i = 0; i < hint.length; i++)
+                hint[i] = this.universe[indexes[i]];
+            String candidate = new String(hint);
+            if (MessageDigest.isEqual(target, digest.digest(candidate.getBytes(StandardCharsets.UTF_8))))
+                return candidate;
+        }
+        return null;
+    }
+
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = this.entries.limit();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.entries.get(mid) < key)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private static int headerSize(char[] universe) {
+        return Long.BYTES + Integer.BYTES + universe.length * Character.BYTES + Integer.BYTES + Long.BYTES;
+    }
+
+    private static int rankBits(long count) {
+        return 64 - Long.numberOfLeadingZeros(Math.max(1, count - 1));
+    }
+
+    private static long prefix(byte[] hash, int rankBits) {
+        return ByteBuffer.wrap(hash).getLong() >>> rankBits;
+    }
+
+    private static long pack(long prefix, long rank, int rankBits) {
+        return (prefix << rankBits) | rank;
+    }
+}
@@ -0,0 +1,62 @@
+package de.hpi.ddm.structures;
+
+/**
+ * A fixed-size histogram of latencies in nanoseconds. Every power of two is split into SUB_BUCKETS linear
+ * buckets, so a reported percentile is at most 1 / SUB_BUCKETS above the true value and never above the max.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[(Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+    private long count;
+    private long max;
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        this.counts[index(value)]++;
+        this.count++;
+        this.max = Math.max(this.max, value);
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    public long getMax() {
+        return this.max;
+    }
+
+    /**
+     * @return the upper bound of the bucket that holds the given quantile, e.g., 0.99 for the 99th percentile
+     */
+    public long percentile(double quantile) {
+        long rank = (long) Math.ceil(quantile * this.count);
+        long seen = 0;
+        for (int i = 0; i < this.counts.length; i++) {
+            seen += this.counts[i];
+            if (seen >= rank && seen > 0)
+                return Math.min(upperBound(i), this.max);
+        }
+        return this.max;
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,74 @@
+package de.hpi.ddm.structures;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A thread-safe set of the latest gauge and counter values that the actors publish and that the status
+ * endpoint renders in the Prometheus text exposition format. Actors never hand out their own state, so
+ * reading the registry from the HTTP thread is safe.
+ */
+public class MetricsRegistry {
+
+    private static class Family {
+        private final String type;
+        private final String help;
+        private final ConcurrentMap<String, Double> samples = new ConcurrentSkipListMap<>();	// Rendered labels to value
+
+        private Family(String type, String help) {
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+    public void gauge(String name, String help, double value) {
+        this.set("gauge", name, help, "", value);
+    }
+
+    public void gauge(String name, String help, String label, String labelValue, double value) {
+        this.set("gauge", name, help, labels(label, labelValue), value);
+    }
+
+    public void counter(String name, String help, double value) {
+        this.set("counter", name, help, "", value);
+    }
+
+    public void counter(String name, String help, String label, String labelValue, double value) {
+        this.set("counter", name, help, labels(label, labelValue), value);
+    }
+
+    /**
+     * Drops the sample of one label value, e.g. of a worker that has terminated, so that it is no longer rendered.
+     */
+    public void remove(String name, String label, String labelValue) {
+        Family family = this.families.get(name);
+        if (family != null)
+            family.samples.remove(labels(label, labelValue));
+    }
+
+    private void set(String type, String name, String help, String labels, double value) {
+        this.families.computeIfAbsent(name, key -> new Family(type, help)).samples.put(labels, value);
+    }
+
+    /**
+     * @return all metrics in the Prometheus text exposition format, version 0.0.4
+     */
+    public String scrape() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Family> family : this.families.entrySet()) {
+            text.append("# HELP ").append(family.getKey()).append(' ').append(family.getValue().help).append('\n');
+            text.append("# TYPE ").append(family.getKey()).append(' ').append(family.getValue().type).append('\n');
+            for (Map.Entry<String, Double> sample : family.getValue().samples.entrySet())
+                text.append(family.getKey()).append(sample.getKey()).append(' ').append(sample.getValue()).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String labels(String label, String value) {
+        String escaped = value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        return "{" + label + "=\"" + escaped + "\"}";
+    }
+}
@@ -0,0 +1,10 @@
+package de.hpi.ddm.structures;
+
+public class MetricsRegistrySingleton {
+
+	private static final MetricsRegistry registry = new MetricsRegistry();
+	
+	public static MetricsRegistry get() {
+		return registry;
+	}
+}
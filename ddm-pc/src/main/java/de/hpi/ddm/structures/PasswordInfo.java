@@ -7,6 +7,8 @@ import lombok.NoArgsConstructor;
 
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 @Data
 @NoArgsConstructor
@@ -21,6 +23,7 @@ public class PasswordInfo implements Serializable {
     private String[] hintHashes;
     private int currHintIndex;
     private String password;
+    private Set<String> crackedHintHashes = new HashSet<>();
 
     public PasswordInfo(String[] line) {
         this.name = line[1];
@@ -40,6 +43,23 @@ public class PasswordInfo implements Serializable {
         currHintIndex++;
     }
 
+    public boolean isHintCracked(String hintHash) {
+        return crackedHintHashes.contains(hintHash);
+    }
+
+    /**
+     * Applies the hint unless a hint with the same hash has been applied before.
+     * @return true if the hint was applied
+     */
+    public boolean crackHint(String hintHash, String hint) {
+        if (!crackedHintHashes.add(hintHash)) {
+            return false;
+        }
+        applyHint(hint);
+        incrementHintIndex();
+        return true;
+    }
+
     public void applyHint(String hint) {
         CharSet hintAsSet = new CharArraySet(hint.toCharArray());
         CharSet currPasswordCharsAsSet = new CharArraySet(Arrays.copyOf(passwordChars, passwordChars.length));
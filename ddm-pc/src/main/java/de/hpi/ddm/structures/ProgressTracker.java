@@ -0,0 +1,122 @@
+package de.hpi.ddm.structures;
+
+import de.hpi.ddm.utils.PasswordComplexity;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tracks how much of the candidate space of all records that have been read so far is explored. Every hint
+ * to crack and every password is a stage whose size follows the PasswordComplexity combinatorics; a stage
+ * advances with the candidates that workers report and counts as fully explored once it is solved.
+ */
+public class ProgressTracker implements ProgressTrackerMBean {
+
+    private static final double RATE_SMOOTHING = 0.3;
+
+    private static class Stage {
+        private final long size;
+        private long explored;
+
+        private Stage(long size) {
+            this.size = size;
+        }
+    }
+
+    private final Map<String, Stage> stages = new HashMap<>();
+
+    private volatile long totalCandidates;
+    private volatile long exploredCandidates;
+    private volatile int records;
+    private volatile int solvedRecords;
+    private volatile double candidatesPerSecond;
+
+    private long sampledCandidates;
+    private long sampledTime;
+
+    public void addRecord(PasswordInfo passwordInfo, PasswordComplexity complexity) {
+        for (int i = 0; i < complexity.getNumHintsToCrack(); i++)
+            this.addStage(passwordInfo.getHintHashes()[i], complexity.getHintSpaceSize());
+        this.addStage(passwordInfo.getPasswordHash(), complexity.getPasswordSpaceSize());
+        this.records++;
+    }
+
+    private void addStage(String hash, long size) {
+        if (this.stages.putIfAbsent(hash, new Stage(size)) == null)
+            this.totalCandidates += size;
+    }
+
+    public void explore(String hash, long candidates) {
+        Stage stage = this.stages.get(hash);
+        if (stage != null)
+            this.advance(stage, Math.min(candidates, stage.size - stage.explored));
+    }
+
+    public void solve(String hash) {
+        Stage stage = this.stages.get(hash);
+        if (stage != null)
+            this.advance(stage, stage.size - stage.explored);
+    }
+
+    public void solveRecord(String passwordHash) {
+        this.solve(passwordHash);
+        this.solvedRecords++;
+    }
+
+    private void advance(Stage stage, long candidates) {
+        stage.explored += candidates;
+        this.exploredCandidates += candidates;
+    }
+
+    /**
+     * Updates the smoothed rate at which the candidate space is explored, including solved stages' rest.
+     */
+    public void sample(long nanoTime) {
+        if (this.sampledTime != 0 && nanoTime > this.sampledTime) {
+            double rate = (this.exploredCandidates - this.sampledCandidates) / ((nanoTime - this.sampledTime) / 1_000_000_000.0);
+            this.candidatesPerSecond = this.candidatesPerSecond == 0 ? rate : RATE_SMOOTHING * rate + (1 - RATE_SMOOTHING) * this.candidatesPerSecond;
+        }
+        this.sampledCandidates = this.exploredCandidates;
+        this.sampledTime = nanoTime;
+    }
+
+    @Override
+    public long getTotalCandidates() {
+        return this.totalCandidates;
+    }
+
+    @Override
+    public long getExploredCandidates() {
+        return this.exploredCandidates;
+    }
+
+    @Override
+    public double getPercentComplete() {
+        return this.totalCandidates == 0 ? 0 : 100.0 * this.exploredCandidates / this.totalCandidates;
+    }
+
+    @Override
+    public int getRecords() {
+        return this.records;
+    }
+
+    @Override
+    public int getSolvedRecords() {
+        return this.solvedRecords;
+    }
+
+    @Override
+    public double getCandidatesPerSecond() {
+        return this.candidatesPerSecond;
+    }
+
+    /**
+     * @return the seconds until all records read so far are solved at the current rate or -1 if there is no rate yet
+     */
+    @Override
+    public long getEtaSeconds() {
+        if (this.candidatesPerSecond <= 0)
+            return -1;
+        return (long) Math.ceil((this.totalCandidates - this.exploredCandidates) / this.candidatesPerSecond);
+    }
+}
@@ -0,0 +1,21 @@
+package de.hpi.ddm.structures;
+
+/**
+ * The JMX view on the progress of a run.
+ */
+public interface ProgressTrackerMBean {
+
+    long getTotalCandidates();
+
+    long getExploredCandidates();
+
+    double getPercentComplete();
+
+    int getRecords();
+
+    int getSolvedRecords();
+
+    double getCandidatesPerSecond();
+
+    long getEtaSeconds();
+}
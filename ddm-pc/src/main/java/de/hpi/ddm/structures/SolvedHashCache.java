@@ -0,0 +1,97 @@
+package de.hpi.ddm.structures;
+
+import de.hpi.ddm.utils.Hashing;
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import lombok.Getter;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+/**
+ * A persistent cache of already cracked SHA-256 hashes and their plaintexts that is shared across runs.
+ * The cache keeps at most maxEntries hashes and evicts the least recently used ones; on disk, every
+ * entry is stored as its binary digest followed by the plaintext, oldest entries first.
+ */
+public class SolvedHashCache {
+
+    private static final int DIGEST_LENGTH = 32;
+
+    private final File file;
+    private final int maxEntries;
+    private final Object2ObjectLinkedOpenHashMap<String, String> entries;
+
+    @Getter
+    private long hits;
+    @Getter
+    private long misses;
+    @Getter
+    private boolean modified;	// True if entries have been added since the cache was loaded or saved
+
+    private SolvedHashCache(File file, int maxEntries) {
+        this.file = file;
+        this.maxEntries = maxEntries;
+        this.entries = new Object2ObjectLinkedOpenHashMap<>();
+    }
+
+    public static SolvedHashCache load(File file, int maxEntries) throws IOException {
+        SolvedHashCache cache = new SolvedHashCache(file, maxEntries);
+        if (!file.exists())
+            return cache;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int size = in.readInt();
+            byte[] digest = new byte[DIGEST_LENGTH];
+            for (int i = 0; i < size; i++) {
+                in.readFully(digest);
+                cache.put(Hashing.toHex(digest), in.readUTF());
+            }
+        }
+        cache.modified = false;
+        return cache;
+    }
+
+    /**
+     * Looks up the plaintext of the hash and marks the entry as recently used.
+     * @return the plaintext or null if the hash has not been cracked before
+     */
+    public String get(String hash) {
+        String plaintext = this.entries.getAndMoveToLast(hash);
+        if (plaintext == null)
+            this.misses++;
+        else
+            this.hits++;
+        return plaintext;
+    }
+
+    public void put(String hash, String plaintext) {
+        if (!plaintext.equals(this.entries.putAndMoveToLast(hash, plaintext)))
+            this.modified = true;
+        while (this.entries.size() > this.maxEntries)
+            this.entries.removeFirst();
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Writes the cache to a temporary file that then atomically replaces the previous cache file.
+     */
+    public void save() throws IOException {
+        File parent = this.file.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        File temp = File.createTempFile(this.file.getName(), ".tmp", parent);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(this.entries.size());
+            for (Map.Entry<String, String> entry : this.entries.entrySet()) {
+                out.write(Hashing.fromHex(entry.getKey()));
+                out.writeUTF(entry.getValue());
+            }
+        }
+        Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.modified = false;
+    }
+}
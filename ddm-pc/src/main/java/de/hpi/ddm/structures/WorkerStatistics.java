@@ -0,0 +1,82 @@
+package de.hpi.ddm.structures;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the candidates that a worker hashes and the time that it spends on each workload type. Only the
+ * worker writes the counters, so volatile fields suffice for JMX and the metrics listener to read them.
+ */
+public class WorkerStatistics implements WorkerStatisticsMBean {
+
+    private final long startNanos = System.nanoTime();
+
+    private volatile long candidatesHashed;
+    private volatile long hintWorkloads;
+    private volatile long hintNanos;
+    private volatile long passwordWorkloads;
+    private volatile long passwordNanos;
+
+    public void recordSearch(boolean hint, long candidates, long nanos) {
+        this.candidatesHashed += candidates;
+        if (hint)
+            this.hintNanos += nanos;
+        else
+            this.passwordNanos += nanos;
+    }
+
+    public void recordCompletion(boolean hint) {
+        if (hint)
+            this.hintWorkloads++;
+        else
+            this.passwordWorkloads++;
+    }
+
+    public long getBusyNanos() {
+        return this.hintNanos + this.passwordNanos;
+    }
+
+    public long getUptimeNanos() {
+        return System.nanoTime() - this.startNanos;
+    }
+
+    @Override
+    public long getCandidatesHashed() {
+        return this.candidatesHashed;
+    }
+
+    @Override
+    public double getHashesPerSecond() {
+        long busyNanos = this.getBusyNanos();
+        return busyNanos == 0 ? 0 : this.candidatesHashed / (busyNanos / 1_000_000_000.0);
+    }
+
+    @Override
+    public long getBusyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.getBusyNanos());
+    }
+
+    @Override
+    public long getIdleMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.getUptimeNanos() - this.getBusyNanos());
+    }
+
+    @Override
+    public long getHintWorkloads() {
+        return this.hintWorkloads;
+    }
+
+    @Override
+    public long getHintMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.hintNanos);
+    }
+
+    @Override
+    public long getPasswordWorkloads() {
+        return this.passwordWorkloads;
+    }
+
+    @Override
+    public long getPasswordMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.passwordNanos);
+    }
+}
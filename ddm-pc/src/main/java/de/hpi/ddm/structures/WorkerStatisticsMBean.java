@@ -0,0 +1,23 @@
+package de.hpi.ddm.structures;
+
+/**
+ * The JMX view on a worker's counters.
+ */
+public interface WorkerStatisticsMBean {
+
+    long getCandidatesHashed();
+
+    double getHashesPerSecond();
+
+    long getBusyMillis();
+
+    long getIdleMillis();
+
+    long getHintWorkloads();
+
+    long getHintMillis();
+
+    long getPasswordWorkloads();
+
+    long getPasswordMillis();
+}
@@ -0,0 +1,72 @@
+package de.hpi.ddm.structures;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One latency histogram per workload type and lifecycle phase of a workload.
+ */
+public class WorkloadLatencies {
+
+    public enum Phase {
+        QUEUE_WAIT("queueWait"),					// From the workload's creation to its dispatch
+        DISPATCH_TO_START("dispatchToStart"),		// Round trip minus execution, i.e., transit and mailbox time
+        EXECUTION("execution"),						// As measured by the worker
+        RESULT_TO_REASSIGN("resultToReassign");		// From a worker's completion to its next dispatch
+
+        private final String key;
+
+        Phase(String key) {
+            this.key = key;
+        }
+    }
+
+    private final Map<String, EnumMap<Phase, LatencyHistogram>> histograms = new TreeMap<>();
+
+    public void record(String workloadType, Phase phase, long nanos) {
+        this.histograms
+                .computeIfAbsent(workloadType, type -> new EnumMap<>(Phase.class))
+                .computeIfAbsent(phase, key -> new LatencyHistogram())
+                .record(nanos);
+    }
+
+    /**
+     * @return one line with the count, p50, p99 and max in milliseconds per workload type and phase
+     */
+    public List<String> summary() {
+        List<String> lines = new ArrayList<>();
+        this.histograms.forEach((type, phases) -> phases.forEach((phase, histogram) -> lines.add(String.format(
+                "%s %s: %d samples, p50 %.3f ms, p99 %.3f ms, max %.3f ms", type, phase.key, histogram.getCount(),
+                millis(histogram.percentile(0.5)), millis(histogram.percentile(0.99)), millis(histogram.getMax())))));
+        return lines;
+    }
+
+    public void writeJson(File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            out.println("{");
+            Iterator<Map.Entry<String, EnumMap<Phase, LatencyHistogram>>> types = this.histograms.entrySet().iterator();
+            while (types.hasNext()) {
+                Map.Entry<String, EnumMap<Phase, LatencyHistogram>> type = types.next();
+                out.println("  \"" + type.getKey() + "\": {");
+                Iterator<Map.Entry<Phase, LatencyHistogram>> phases = type.getValue().entrySet().iterator();
+                while (phases.hasNext()) {
+                    Map.Entry<Phase, LatencyHistogram> phase = phases.next();
+                    LatencyHistogram histogram = phase.getValue();
+                    out.printf("    \"%s\": {\"count\": %d, \"p50Nanos\": %d, \"p99Nanos\": %d, \"maxNanos\": %d}%s%n",
+                            phase.getKey().key, histogram.getCount(), histogram.percentile(0.5),
+                            histogram.percentile(0.99), histogram.getMax(), phases.hasNext() ? "," : "");
+                }
+                out.println("  }" + (types.hasNext() ? "," : ""));
+            }
+            out.println("}");
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
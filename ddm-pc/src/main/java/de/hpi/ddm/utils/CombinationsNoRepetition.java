@@ -17,6 +17,53 @@ public class CombinationsNoRepetition implements Iterable<String> {
         return new CombinationIterator();
     }
 
+    public static long count(int n, int k) {
+        if (k < 0 || k > n) {
+            return 0;
+        }
+        long count = 1;
+        for (int i = 1; i <= k; i++) {
+            count = count * (n - k + i) / i;
+        }
+        return count;
+    }
+
+    /**
+     * Writes the k-combination with the given lexicographic rank as ascending indexes into a universe of n chars.
+     */
+    public static void unrank(long rank, int n, int[] pointers) {
+        int k = pointers.length;
+        int x = 0;
+        for (int i = 0; i < k; i++) {
+            long withX;
+            while ((withX = count(n - x - 1, k - i - 1)) <= rank) {
+                rank -= withX;
+                x++;
+            }
+            pointers[i] = x++;
+        }
+    }
+
+    /**
+     * Advances the pointers to the lexicographically next k-combination of a universe of n chars.
+     * @return false if the pointers already were the last combination
+     */
+    public static boolean next(int n, int[] pointers) {
+        int k = pointers.length;
+        int i = k - 1;
+        while (i >= 0 && pointers[i] == n - k + i) {
+            i--;
+        }
+        if (i < 0) {
+            return false;
+        }
+        pointers[i]++;
+        for (int j = i + 1; j < k; j++) {
+            pointers[j] = pointers[j - 1] + 1;
+        }
+        return true;
+    }
+
     @Data
     private class CombinationIterator implements Iterator<String> {
 
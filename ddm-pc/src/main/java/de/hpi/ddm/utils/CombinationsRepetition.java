@@ -18,6 +18,38 @@ public class CombinationsRepetition implements Iterable<String> {
         return new CombinationIterator();
     }
 
+    public static long count(int n, int passwordLength) {
+        long count = 1;
+        for (int i = 0; i < passwordLength; i++) {
+            count *= n;
+        }
+        return count;
+    }
+
+    /**
+     * Writes the sequence with the given rank as indexes into a universe of n chars, most significant position first.
+     */
+    public static void unrank(long rank, int n, int[] pointers) {
+        for (int i = pointers.length - 1; i >= 0; i--) {
+            pointers[i] = (int) (rank % n);
+            rank /= n;
+        }
+    }
+
+    /**
+     * Advances the pointers to the next sequence; after the last sequence, the pointers wrap around to the first one.
+     * @return false if the pointers wrapped around
+     */
+    public static boolean next(int n, int[] pointers) {
+        for (int i = pointers.length - 1; i >= 0; i--) {
+            if (++pointers[i] < n) {
+                return true;
+            }
+            pointers[i] = 0;
+        }
+        return false;
+    }
+
     private class CombinationIterator implements Iterator<String> {
         private int[] pointers;
         private int[] lastCombination;
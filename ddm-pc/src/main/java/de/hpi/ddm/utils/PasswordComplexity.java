@@ -36,6 +36,21 @@ public class PasswordComplexity {
         this.numHintsToCrack = numHints;
     }
 
+    /**
+     * @return the number of candidates of one hint's search space, i.e., all permutations of the universe
+     */
+    public long getHintSpaceSize() {
+        return Permutations.count(numChars);
+    }
+
+    /**
+     * @return the number of candidates of the password's search space once numHintsToCrack hints are applied
+     */
+    public long getPasswordSpaceSize() {
+        return CombinationsNoRepetition.count(numChars - numHintsToCrack, numCharsUsedForPassword)
+                * CombinationsRepetition.count(numCharsUsedForPassword, passwordLength);
+    }
+
     private int getHintComplexity() {
         return factorial(numChars);
     }
@@ -14,6 +14,66 @@ public class Permutations implements Iterable<String> {
         this.length = universe.length;
     }
 
+    public static long count(int length) {
+        long count = 1;
+        for (int i = 2; i <= length; i++) {
+            count *= i;
+        }
+        return count;
+    }
+
+    /**
+     * Writes the permutation with the given lexicographic rank as indexes into the universe.
+     */
+    public static void unrank(long rank, int[] indexes) {
+        int length = indexes.length;
+        boolean[] used = new boolean[length];
+        for (int position = 0; position < length; position++) {
+            long block = count(length - position - 1);
+            int digit = (int) (rank / block);
+            rank %= block;
+
+            int index = 0;
+            while (used[index] || digit > 0) {
+                if (!used[index]) {
+                    digit--;
+                }
+                index++;
+            }
+            used[index] = true;
+            indexes[position] = index;
+        }
+    }
+
+    /**
+     * Advances the indexes to the lexicographically next permutation.
+     * @return false if the indexes already were the last permutation
+     */
+    public static boolean next(int[] indexes) {
+        int i = indexes.length - 2;
+        while (i >= 0 && indexes[i] >= indexes[i + 1]) {
+            i--;
+        }
+        if (i < 0) {
+            return false;
+        }
+        int j = indexes.length - 1;
+        while (indexes[j] <= indexes[i]) {
+            j--;
+        }
+        swap(indexes, i, j);
+        for (int left = i + 1, right = indexes.length - 1; left < right; left++, right--) {
+            swap(indexes, left, right);
+        }
+        return true;
+    }
+
+    private static void swap(int[] indexes, int i, int j) {
+        int swap = indexes[i];
+        indexes[i] = indexes[j];
+        indexes[j] = swap;
+    }
+
     @Override
     public Iterator<String> iterator() {
         return new Iterator<String>() {
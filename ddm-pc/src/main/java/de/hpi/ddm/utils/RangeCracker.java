@@ -0,0 +1,136 @@
+package de.hpi.ddm.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.function.Predicate;
+
+/**
+ * Hashes the candidates of a rank range and tests their SHA-256 digests against a target. Hint candidates are
+ * ranked like the lexicographic permutations of their universe; password candidates are ranked by their
+ * char combination first and their sequence of the combination's chars second.
+ */
+public class RangeCracker {
+
+    private static final int DIGEST_LENGTH = 32;
+
+    @Getter
+    @AllArgsConstructor
+    public static class Result {
+        private final String match;	// The first candidate whose digest matched the target or null if no candidate matched
+        private final long next;	// The rank after the last candidate that has been hashed
+        private final long candidates;
+    }
+
+    /**
+     * A search over the candidates of one target whose ranks lie in [from, to).
+     */
+    public interface RangeSearch {
+        Result search(long from, long to);
+    }
+
+    public static Predicate<byte[]> target(String hash) {
+        byte[] digest = Hashing.fromHex(hash);
+        return candidate -> MessageDigest.isEqual(digest, candidate);
+    }
+
+    public static long hintSpaceSize(char[] universe) {
+        return Permutations.count(universe.length);
+    }
+
+    public static long passwordSpaceSize(char[] universe, int numCharsUsed, int passwordLength) {
+        return CombinationsNoRepetition.count(universe.length, numCharsUsed)
+                * CombinationsRepetition.count(numCharsUsed, passwordLength);
+    }
+
+    /**
+     * Hashes all hints, i.e., permutations without their last char, with a rank in [from, to) until one matches.
+     */
+    public static Result searchHints(char[] universe, Predicate<byte[]> target, long from, long to) {
+        byte[][] charBytes = encode(universe);
+        MessageDigest digest = Hashing.sha256();
+        byte[] hash = new byte[DIGEST_LENGTH];
+        byte[] candidate = new byte[maxLength(charBytes, universe.length - 1)];
+
+        int[] indexes = new int[universe.length];
+        Permutations.unrank(from, indexes);
+
+        for (long rank = from; rank < to; rank++) {
+            int length = 0;
+            for (int i = 0; i < indexes.length - 1; i++)
+                length = append(candidate, length, charBytes[indexes[i]]);
+
+            digest(digest, candidate, length, hash);
+            if (target.test(hash))
+                return new Result(new String(candidate, 0, length, StandardCharsets.UTF_8), rank + 1, rank + 1 - from);
+
+            Permutations.next(indexes);
+        }
+        return new Result(null, to, to - from);
+    }
+
+    /**
+     * Hashes all passwords of numCharsUsed distinct universe chars with a rank in [from, to) until one matches.
+     */
+    public static Result searchPasswords(char[] universe, int numCharsUsed, int passwordLength, Predicate<byte[]> target, long from, long to) {
+        byte[][] charBytes = encode(universe);
+        MessageDigest digest = Hashing.sha256();
+        byte[] hash = new byte[DIGEST_LENGTH];
+        byte[] candidate = new byte[maxLength(charBytes, passwordLength)];
+
+        long numSequences = CombinationsRepetition.count(numCharsUsed, passwordLength);
+        int[] combination = new int[numCharsUsed];
+        int[] sequence = new int[passwordLength];
+        CombinationsNoRepetition.unrank(from / numSequences, universe.length, combination);
+        CombinationsRepetition.unrank(from % numSequences, numCharsUsed, sequence);
+
+        for (long rank = from; rank < to; rank++) {
+            int length = 0;
+            for (int pointer : sequence)
+                length = append(candidate, length, charBytes[combination[pointer]]);
+
+            digest(digest, candidate, length, hash);
+            if (target.test(hash))
+                return new Result(new String(candidate, 0, length, StandardCharsets.UTF_8), rank + 1, rank + 1 - from);
+
+            if (!CombinationsRepetition.next(numCharsUsed, sequence))
+                CombinationsNoRepetition.next(universe.length, combination);
+        }
+        return new Result(null, to, to - from);
+    }
+
+    private static byte[][] encode(char[] universe) {
+        byte[][] charBytes = new byte[universe.length][];
+        for (int i = 0; i < universe.length; i++)
+            charBytes[i] = String.valueOf(universe[i]).getBytes(StandardCharsets.UTF_8);
+        return charBytes;
+    }
+
+    private static int maxLength(byte[][] charBytes, int numChars) {
+        int maxCharLength = 1;
+        for (byte[] bytes : charBytes)
+            maxCharLength = Math.max(maxCharLength, bytes.length);
+        return maxCharLength * numChars;
+    }
+
+    private static int append(byte[] candidate, int length, byte[] bytes) {
+        if (bytes.length == 1) {
+            candidate[length] = bytes[0];
+            return length + 1;
+        }
+        System.arraycopy(bytes, 0, candidate, length, bytes.length);
+        return length + bytes.length;
+    }
+
+    private static void digest(MessageDigest digest, byte[] candidate, int length, byte[] hash) {
+        digest.update(candidate, 0, length);
+        try {
+            digest.digest(hash, 0, DIGEST_LENGTH);
+        } catch (DigestException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+    }
+}
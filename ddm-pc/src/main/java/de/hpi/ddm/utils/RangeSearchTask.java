@@ -0,0 +1,53 @@
+package de.hpi.ddm.utils;
+
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Splits a rank range in halves until the halves are small enough to be searched sequentially. Once one
+ * half finds a match, all halves that have not started yet are skipped.
+ */
+public class RangeSearchTask extends RecursiveTask<RangeCracker.Result> {
+
+    private static final long serialVersionUID = -2604478937524460366L;
+    private static final long LEAF_SIZE = 1 << 14;
+
+    private final RangeCracker.RangeSearch search;
+    private final long from;
+    private final long to;
+    private final AtomicBoolean found;
+
+    public RangeSearchTask(RangeCracker.RangeSearch search, long from, long to) {
+        this(search, from, to, new AtomicBoolean());
+    }
+
+    private RangeSearchTask(RangeCracker.RangeSearch search, long from, long to, AtomicBoolean found) {
+        this.search = search;
+        this.from = from;
+        this.to = to;
+        this.found = found;
+    }
+
+    @Override
+    protected RangeCracker.Result compute() {
+        if (this.found.get())
+            return new RangeCracker.Result(null, this.to, 0);
+
+        if (this.to - this.from <= LEAF_SIZE) {
+            RangeCracker.Result result = this.search.search(this.from, this.to);
+            if (result.getMatch() != null)
+                this.found.set(true);
+            return result;
+        }
+
+        long middle = this.from + (this.to - this.from) / 2;
+        RangeSearchTask lower = new RangeSearchTask(this.search, this.from, middle, this.found);
+        RangeSearchTask upper = new RangeSearchTask(this.search, middle, this.to, this.found);
+        lower.fork();
+        RangeCracker.Result upperResult = upper.compute();
+        RangeCracker.Result lowerResult = lower.join();
+
+        String match = lowerResult.getMatch() != null ? lowerResult.getMatch() : upperResult.getMatch();
+        return new RangeCracker.Result(match, this.to, lowerResult.getCandidates() + upperResult.getCandidates());
+    }
+}